@@ -1,15 +1,41 @@
 # Graph clustering feature selection
 # svc
 # export LD_LIBRARY_PATH="$LD_LIBRARY_PATH:/usr/local/lib"
+#
+# python clusterer.py [dir]     -- clusters dir/fcn.net, writes {wt,fg,lv,im}.cfg and .cfg.cl files to dir
+#                                  (default: the working directory); a binary fcn.net (FCNetwork.saveBinary)
+#                                  gives binary .cfg.cl partitions (Partition.load)
+# python clusterer.py --worker  -- resident worker, clusters a stream of networks (see serve())
 
 import igraph as ig
 import math
+import os
+import struct
+import sys
 
 from random import randint
 
+# the order of partitions in worker responses
+VARIANTS = ["wt", "fg", "lv", "im"]
+
+# magic numbers of the binary network and partition formats (see CSRGraph and Partition)
+FCN_MAGIC = 0x46434E31
+PARTITION_MAGIC = 0x46435031
+
 class FeatureCorrelationNetwork(object):
-	def __init__(self, inputFile):
+	def __init__(self, inputFile = None):
 		self.graph = ig.Graph()
+		self.binary = False
+		if inputFile is None:
+			return
+
+		f = open(inputFile, "rb")
+		data = f.read()
+		f.close()
+		if len(data) >= 4 and struct.unpack_from(">i", data, 0)[0] == FCN_MAGIC:
+			self.__readBinary(data)
+			return
+
 		lines = [line.rstrip('\n') for line in open(inputFile)]
 		createLink = False
 		for line in lines:
@@ -25,26 +51,61 @@ class FeatureCorrelationNetwork(object):
 				else:
 					self.graph.add_vertex(name=toks[0], **{"label" : toks[1], "r" : float(toks[2])})
 
-		
+	def __readBinary(self, data):
+		self.binary = True
+		n, m = struct.unpack_from(">ii", data, 4)
+		pos = 12
+		names, labels, rs = [], [], []
+		for i in range(n):
+			nid, r, length = struct.unpack_from(">idi", data, pos)
+			pos += 16
+			names.append(str(nid))
+			labels.append(data[pos:pos + length].decode("utf-8"))
+			rs.append(r)
+			pos += length
+
+		edges, weights = [], []
+		for k in range(m):
+			src, dst, r = struct.unpack_from(">iid", data, pos + 16 * k)
+			edges.append((src, dst))
+			weights.append(math.fabs(r))
+
+		self.graph = ig.Graph(n = n, edges = edges)
+		self.graph.vs["name"] = names
+		self.graph.vs["label"] = labels
+		self.graph.vs["r"] = rs
+		self.graph.es["weight"] = weights
+
+	@staticmethod
+	def fromEdges(n, edges, weights):
+		fcn = FeatureCorrelationNetwork()
+		fcn.graph = ig.Graph(n = n, edges = edges)
+		fcn.graph.es["weight"] = [math.fabs(w) for w in weights]
+		return fcn
+
+	def clusterings(self):
+		return {
+			"wt" : self.graph.community_walktrap("weight").as_clustering(),
+			"fg" : self.graph.community_fastgreedy("weight").as_clustering(),
+			"lv" : self.graph.community_multilevel("weight"),
+			"im" : self.graph.community_infomap("weight", trials = 100)
+		}
 
 	def cluster(self, cfg_fg, cfg_lv, cfg_wt, cfg_im):
-		fg = self.graph.community_fastgreedy("weight").as_clustering()
-		self.__export(fg, cfg_fg + ".cl")
-		self.__attrSelectionClusterDriven(fg, cfg_fg)
-		
-		lv = self.graph.community_multilevel("weight")
-		self.__export(lv, cfg_lv + ".cl")
-		self.__attrSelectionClusterDriven(lv, cfg_lv)
-		
-		wt = self.graph.community_walktrap("weight").as_clustering()
-		self.__export(wt, cfg_wt + ".cl")
-		self.__attrSelectionClusterDriven(wt, cfg_wt)
-		
-		im = self.graph.community_infomap("weight", trials = 100)
-		self.__export(im, cfg_im + ".cl")
-		self.__attrSelectionClusterDriven(im, cfg_im)
-	
+		cls = self.clusterings()
+		for (cl, cfg) in [(cls["fg"], cfg_fg), (cls["lv"], cfg_lv), (cls["wt"], cfg_wt), (cls["im"], cfg_im)]:
+			self.__export(cl, cfg + ".cl")
+			self.__attrSelectionClusterDriven(cl, cfg)
+
 	def __export(self, clustering, file_name):
+		if self.binary:
+			f = open(file_name, 'wb')
+			n = len(clustering.membership)
+			f.write(struct.pack(">idi", PARTITION_MAGIC, clustering.modularity, n))
+			f.write(struct.pack(">%di" % n, *clustering.membership))
+			f.close()
+			return
+
 		net = clustering.graph
 		f = open(file_name, 'w')
 		f.write(str(clustering.modularity) + "\n")
@@ -63,23 +124,71 @@ class FeatureCorrelationNetwork(object):
 				for node in cl_graph.vs:
 					if node["r"] > maxRNode["r"]:
 						maxRNode = node
-				
-				
+
+
 				f.write(maxRNode["name"] + "," + maxRNode["label"] + "\n")
-				numSelAttr = numSelAttr + 1				
+				numSelAttr = numSelAttr + 1
 				toDelete = [maxRNode.index]
 				toDelete.extend(cl_graph.neighbors(maxRNode.index))
 				cl_graph.delete_vertices(toDelete)
-		
-		f.close()			
-	
-		
 
-fcn = FeatureCorrelationNetwork("fcn.net")
-fcn.cluster("fg.cfg", "lv.cfg", "wt.cfg", "im.cfg")
-print "OK"
+		f.close()
+
+
+# Worker protocol (big-endian), every message is a frame: int32 payload length, payload
+#   request:  int32 opcode (0 = exit, 1 = cluster), int32 n, int32 m, m x (int32 src, int32 dst, float64 r)
+#   response: int32 status (0 = ok, 1 = error);
+#             ok    -> for each variant in VARIANTS: float64 modularity, int32 n, n x int32 membership
+#             error -> utf-8 error message
+def readFully(stream, size):
+	buf = b""
+	while len(buf) < size:
+		chunk = stream.read(size - len(buf))
+		if not chunk:
+			return None
+		buf += chunk
+	return buf
+
+def writeFrame(stream, payload):
+	stream.write(struct.pack(">i", len(payload)))
+	stream.write(payload)
+	stream.flush()
+
+def serve(inp, out):
+	while True:
+		header = readFully(inp, 4)
+		if header is None:
+			return
+
+		payload = readFully(inp, struct.unpack(">i", header)[0])
+		if payload is None or struct.unpack_from(">i", payload, 0)[0] == 0:
+			return
 
+		n, m = struct.unpack_from(">ii", payload, 4)
 
+		try:
+			edges = []
+			weights = []
+			for k in range(m):
+				src, dst, r = struct.unpack_from(">iid", payload, 12 + 16 * k)
+				edges.append((src, dst))
+				weights.append(r)
 
+			cls = FeatureCorrelationNetwork.fromEdges(n, edges, weights).clusterings()
+			parts = [struct.pack(">i", 0)]
+			for v in VARIANTS:
+				cl = cls[v]
+				parts.append(struct.pack(">di", cl.modularity, n))
+				parts.append(struct.pack(">%di" % n, *cl.membership))
+			writeFrame(out, b"".join(parts))
+		except Exception as e:
+			writeFrame(out, struct.pack(">i", 1) + str(e).encode("utf-8"))
 
 
+if len(sys.argv) > 1 and sys.argv[1] == "--worker":
+	serve(getattr(sys.stdin, "buffer", sys.stdin), getattr(sys.stdout, "buffer", sys.stdout))
+else:
+	d = sys.argv[1] if len(sys.argv) > 1 else "."
+	fcn = FeatureCorrelationNetwork(os.path.join(d, "fcn.net"))
+	fcn.cluster(*[os.path.join(d, v + ".cfg") for v in ["fg", "lv", "wt", "im"]])
+	print("OK")
@@ -0,0 +1,187 @@
+package svc.fsfcn;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Buffered big-endian binary files accessed through NIO channels (used by the binary
+ * formats of feature correlation networks and partitions). Every file starts with a
+ * four-byte magic number identifying its content
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class BinaryFile {
+	private static final int BUFFER_SIZE = 1 << 20;
+	
+	/**
+	 * True if the file exists and starts with the given magic number
+	 */
+	public static boolean hasMagic(String file, int magic) {
+		try (FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			ByteBuffer b = ByteBuffer.allocate(4);
+			while (b.hasRemaining())
+				if (ch.read(b) < 0)
+					return false;
+			b.flip();
+			return b.getInt() == magic;
+		} catch (IOException ioe) {
+			return false;
+		}
+	}
+	
+	public static class Writer implements AutoCloseable {
+		private FileChannel ch;
+		private ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		
+		public Writer(String file, int magic) 
+			throws IOException 
+		{
+			ch = FileChannel.open(Paths.get(file), 
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			putInt(magic);
+		}
+		
+		private void ensure(int bytes) 
+			throws IOException 
+		{
+			if (buf.remaining() < bytes)
+				flush();
+		}
+		
+		private void flush() 
+			throws IOException 
+		{
+			buf.flip();
+			while (buf.hasRemaining())
+				ch.write(buf);
+			buf.clear();
+		}
+		
+		public void putInt(int v) 
+			throws IOException 
+		{
+			ensure(4);
+			buf.putInt(v);
+		}
+		
+		public void putDouble(double v) 
+			throws IOException 
+		{
+			ensure(8);
+			buf.putDouble(v);
+		}
+		
+		public void putString(String s) 
+			throws IOException 
+		{
+			byte[] b = s.getBytes(StandardCharsets.UTF_8);
+			putInt(b.length);
+			int pos = 0;
+			while (pos < b.length) {
+				ensure(1);
+				int len = Math.min(buf.remaining(), b.length - pos);
+				buf.put(b, pos, len);
+				pos += len;
+			}
+		}
+		
+		@Override
+		public void close() 
+			throws IOException 
+		{
+			try {
+				flush();
+			} finally {
+				ch.close();
+			}
+		}
+	}
+	
+	public static class Reader implements AutoCloseable {
+		private String file;
+		private FileChannel ch;
+		private ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		
+		public Reader(String file, int magic) 
+			throws IOException 
+		{
+			this.file = file;
+			ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+			buf.flip();
+			try {
+				if (getInt() != magic)
+					throw new IOException("IOERR [class: BinaryFile, unknown format] " + file);
+			} catch (IOException | RuntimeException e) {
+				// a file shorter than the header fails in getInt()
+				ch.close();
+				throw e;
+			}
+		}
+		
+		private void ensure(int bytes) 
+			throws IOException 
+		{
+			if (buf.remaining() >= bytes)
+				return;
+			
+			buf.compact();
+			while (buf.position() < bytes) {
+				if (ch.read(buf) < 0)
+					throw new IOException("IOERR [class: BinaryFile, unexpected end of file] " + file);
+			}
+			buf.flip();
+		}
+		
+		public int getInt() 
+			throws IOException 
+		{
+			ensure(4);
+			return buf.getInt();
+		}
+		
+		public double getDouble() 
+			throws IOException 
+		{
+			ensure(8);
+			return buf.getDouble();
+		}
+		
+		public String getString() 
+			throws IOException 
+		{
+			int length = getInt();
+			if (length < 0 || length > remaining())
+				throw new IOException("IOERR [class: BinaryFile, invalid string length " + length + "] " + file);
+			byte[] b = new byte[length];
+			int pos = 0;
+			while (pos < b.length) {
+				ensure(1);
+				int len = Math.min(buf.remaining(), b.length - pos);
+				buf.get(b, pos, len);
+				pos += len;
+			}
+			return new String(b, StandardCharsets.UTF_8);
+		}
+		
+		/**
+		 * The number of bytes left in the file (counts read from the file are checked 
+		 * against it before arrays are allocated)
+		 */
+		public long remaining() 
+			throws IOException 
+		{
+			return buf.remaining() + ch.size() - ch.position();
+		}
+		
+		@Override
+		public void close() 
+			throws IOException 
+		{
+			ch.close();
+		}
+	}
+}
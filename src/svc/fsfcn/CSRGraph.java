@@ -0,0 +1,221 @@
+package svc.fsfcn;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import edu.uci.ics.jung.graph.UndirectedSparseGraph;
+
+/**
+ * Int-indexed snapshot of a feature correlation network in the compressed sparse row format.
+ * Nodes are numbered 0..n-1, the neighbours of node i are stored in target[offset[i] .. offset[i + 1]),
+ * each undirected link appears twice (once for each of its end nodes)
+ *
+ * Binary format (see BinaryFile): magic "FCN1", int n, int m, n x (int id, double class
+ * correlation, string name), m x (int src, int dst, double r) with src < dst being node indexes
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class CSRGraph {
+	public static final int MAGIC = 0x46434E31;   // "FCN1"
+
+	private Attribute[] node;
+	private int[] offset;
+	private int[] target;
+	private double[] r;          // (signed) correlation between the end nodes of an adjacency entry
+	private double[] strength;   // the sum of |r| over the links incident to a node
+	private double totalWeight;  // the sum of |r| over all links
+
+	public CSRGraph(Attribute[] node, int[] offset, int[] target, double[] r) {
+		this.node = node;
+		this.offset = offset;
+		this.target = target;
+		this.r = r;
+
+		strength = new double[node.length];
+		double sum = 0.0;
+		for (int i = 0; i < node.length; i++) {
+			double s = 0.0;
+			for (int k = offset[i]; k < offset[i + 1]; k++)
+				s += Math.abs(r[k]);
+			strength[i] = s;
+			sum += s;
+		}
+		totalWeight = sum / 2.0;
+	}
+
+	/**
+	 * Builds the CSR representation of a JUNG graph, nodes are numbered according to
+	 * their order in the given array (attributes not present in the graph are skipped)
+	 */
+	public static CSRGraph of(UndirectedSparseGraph<Attribute, AttributePair> g, Attribute[] order) {
+		Attribute[] node = new Attribute[g.getVertexCount()];
+		int maxId = 0;
+		for (int i = 0; i < order.length; i++)
+			if (order[i].getId() > maxId)
+				maxId = order[i].getId();
+
+		int[] index = new int[maxId + 1];
+		int n = 0;
+		for (int i = 0; i < order.length; i++) {
+			if (g.containsVertex(order[i])) {
+				index[order[i].getId()] = n;
+				node[n++] = order[i];
+			}
+		}
+
+		int[] offset = new int[n + 1];
+		Iterator<AttributePair> it = g.getEdges().iterator();
+		while (it.hasNext()) {
+			AttributePair ap = it.next();
+			offset[index[ap.getAtr1().getId()] + 1]++;
+			offset[index[ap.getAtr2().getId()] + 1]++;
+		}
+		for (int i = 0; i < n; i++)
+			offset[i + 1] += offset[i];
+
+		int[] pos = new int[n];
+		System.arraycopy(offset, 0, pos, 0, n);
+		int[] target = new int[offset[n]];
+		double[] r = new double[offset[n]];
+		it = g.getEdges().iterator();
+		while (it.hasNext()) {
+			AttributePair ap = it.next();
+			int src = index[ap.getAtr1().getId()];
+			int dst = index[ap.getAtr2().getId()];
+			target[pos[src]] = dst;
+			r[pos[src]++] = ap.getR();
+			target[pos[dst]] = src;
+			r[pos[dst]++] = ap.getR();
+		}
+
+		return new CSRGraph(node, offset, target, r);
+	}
+
+	/**
+	 * Builds a graph from an edge list, src and dst are node indexes
+	 */
+	public static CSRGraph of(Attribute[] node, int[] src, int[] dst, double[] r) {
+		int n = node.length;
+		int[] offset = new int[n + 1];
+		for (int k = 0; k < src.length; k++) {
+			offset[src[k] + 1]++;
+			offset[dst[k] + 1]++;
+		}
+		for (int i = 0; i < n; i++)
+			offset[i + 1] += offset[i];
+
+		int[] pos = new int[n];
+		System.arraycopy(offset, 0, pos, 0, n);
+		int[] target = new int[offset[n]];
+		double[] w = new double[offset[n]];
+		for (int k = 0; k < src.length; k++) {
+			target[pos[src[k]]] = dst[k];
+			w[pos[src[k]]++] = r[k];
+			target[pos[dst[k]]] = src[k];
+			w[pos[dst[k]]++] = r[k];
+		}
+
+		return new CSRGraph(node, offset, target, w);
+	}
+
+	public void save(String outFile)
+		throws IOException
+	{
+		try (BinaryFile.Writer out = new BinaryFile.Writer(outFile, MAGIC)) {
+			out.putInt(numNodes());
+			out.putInt(numEdges());
+			for (int i = 0; i < numNodes(); i++) {
+				out.putInt(node[i].getId());
+				out.putDouble(node[i].getClassCorrelation());
+				out.putString(node[i].getName());
+			}
+
+			for (int i = 0; i < numNodes(); i++) {
+				for (int k = offset[i]; k < offset[i + 1]; k++) {
+					if (i < target[k]) {
+						out.putInt(i);
+						out.putInt(target[k]);
+						out.putDouble(r[k]);
+					}
+				}
+			}
+		}
+	}
+
+	public static CSRGraph load(String inFile)
+		throws IOException
+	{
+		try (BinaryFile.Reader in = new BinaryFile.Reader(inFile, MAGIC)) {
+			int n = in.getInt();
+			int m = in.getInt();
+			// a node takes at least 16 bytes (id, class correlation, name length), a link 16 bytes
+			if (n < 0 || m < 0 || 16L * n + 16L * m > in.remaining())
+				throw new IOException("IOERR [class: CSRGraph, load] invalid numbers of nodes and links " + n + "," + m 
+					+ " for " + in.remaining() + " remaining bytes");
+			Attribute[] node = new Attribute[n];
+			for (int i = 0; i < n; i++) {
+				int id = in.getInt();
+				double classCorrelation = in.getDouble();
+				node[i] = new Attribute(id, in.getString());
+				node[i].setClassCorrelation(classCorrelation);
+			}
+
+			int[] src = new int[m];
+			int[] dst = new int[m];
+			double[] r = new double[m];
+			for (int k = 0; k < m; k++) {
+				src[k] = in.getInt();
+				dst[k] = in.getInt();
+				r[k] = in.getDouble();
+				if (src[k] < 0 || src[k] >= n || dst[k] < 0 || dst[k] >= n)
+					throw new IOException("IOERR [class: CSRGraph, load] invalid link " + src[k] + "," + dst[k]);
+			}
+
+			return of(node, src, dst, r);
+		}
+	}
+
+	public int numNodes() {
+		return node.length;
+	}
+
+	public int numEdges() {
+		return target.length / 2;
+	}
+
+	public Attribute node(int i) {
+		return node[i];
+	}
+
+	public int begin(int i) {
+		return offset[i];
+	}
+
+	public int end(int i) {
+		return offset[i + 1];
+	}
+
+	public int degree(int i) {
+		return offset[i + 1] - offset[i];
+	}
+
+	public int target(int k) {
+		return target[k];
+	}
+
+	public double r(int k) {
+		return r[k];
+	}
+
+	public double weight(int k) {
+		return Math.abs(r[k]);
+	}
+
+	public double strength(int i) {
+		return strength[i];
+	}
+
+	public double totalWeight() {
+		return totalWeight;
+	}
+}
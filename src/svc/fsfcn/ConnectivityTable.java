@@ -0,0 +1,237 @@
+package svc.fsfcn;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Connectivity of feature correlation networks for all feature relevance thresholds.
+ * The nodes of the network for threshold t are the features whose |class correlation|
+ * exceeds t, i.e. a prefix of the features sorted by relevance. createConnected() adds
+ * pairs in the sorted order until the network becomes connected, so it stops at the
+ * last link of the minimum spanning forest (with respect to the pair order) of the prefix.
+ * The spanning forest of a prefix extended by one feature is contained in the forest of
+ * the prefix together with the pairs of the new feature, hence the stop positions for all
+ * prefixes are obtained by a single sweep over the features (offline incremental Kruskal)
+ *
+ * Memory: the table keeps every pair index and the lower relevance rank of its features
+ * bucketed by the higher rank (8 bytes per pair) together with O(n) arrays of the features.
+ * Beyond Dataset.MAX_HEAP_PAIRS pairs these 8 bytes per pair are held off-heap in memory-mapped
+ * files (MappedArray), like the pair order of such datasets. Building the table reads the ids
+ * of all pairs, so a lazily sorted pair order (SortedPairIndex) is sorted completely
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class ConnectivityTable {
+	private Attribute[] attribute;             // features sorted by relevance
+	private PairOrder pairs;                   // pairs sorted by |r|
+	private double[] relevance;                // |class correlation| of features in the sorted order
+	
+	// pair indexes bucketed by the higher relevance rank of their features (in the pair order)
+	// and the lower rank of the pair
+	private int[] bucketStart;
+	private IntArray bucketPair;
+	
+	// the index of the pair that makes the network of the first k features connected, -1 if not connected
+	private int[] stop;
+	
+	public ConnectivityTable(Dataset ds) 
+		throws IOException 
+	{
+		this(ds.getAttributes(), ds.getPairOrder());
+	}
+	
+	public ConnectivityTable(Attribute[] attribute, PairOrder pairs) 
+		throws IOException 
+	{
+		this.attribute = attribute;
+		this.pairs = pairs;
+		
+		int n = attribute.length;
+		relevance = new double[n];
+		int maxId = 0;
+		for (int i = 0; i < n; i++) {
+			relevance[i] = Math.abs(attribute[i].getClassCorrelation());
+			maxId = Math.max(maxId, attribute[i].getId());
+		}
+		
+		int[] rank = new int[maxId + 1];
+		for (int i = 0; i < n; i++)
+			rank[attribute[i].getId()] = i;
+		
+		// the ranks of pairs are computed in both passes instead of being kept
+		int numPairs = pairs.size();
+		bucketStart = new int[n + 1];
+		for (int p = 0; p < numPairs; p++)
+			bucketStart[Math.max(rank[pairs.atr1(p)], rank[pairs.atr2(p)]) + 1]++;
+		for (int i = 0; i < n; i++)
+			bucketStart[i + 1] += bucketStart[i];
+		
+		boolean offHeap = numPairs > Dataset.MAX_HEAP_PAIRS;
+		int[] pos = Arrays.copyOf(bucketStart, n);
+		bucketPair = new IntArray(numPairs, offHeap);
+		IntArray bucketLo = new IntArray(numPairs, offHeap);
+		for (int p = 0; p < numPairs; p++) {
+			int r1 = rank[pairs.atr1(p)];
+			int r2 = rank[pairs.atr2(p)];
+			int hi = Math.max(r1, r2);
+			bucketLo.put(pos[hi], Math.min(r1, r2));
+			bucketPair.put(pos[hi]++, p);
+		}
+		
+		sweep(n, bucketLo);
+	}
+	
+	private void sweep(int n, IntArray bucketLo) {
+		stop = new int[n + 1];
+		Arrays.fill(stop, -1);
+		
+		int maxBucket = 0;
+		for (int k = 0; k < n; k++)
+			maxBucket = Math.max(maxBucket, bucketStart[k + 1] - bucketStart[k]);
+		
+		// spanning forest of the current prefix (pair index and the ranks of its ends, in the pair order)
+		int[] forest = new int[n];
+		int[] forestLo = new int[n];
+		int[] forestHi = new int[n];
+		int forestLen = 0;
+		
+		int[] cand = new int[n + maxBucket];
+		int[] candLo = new int[n + maxBucket];
+		int[] candHi = new int[n + maxBucket];
+		DisjointSets components = new DisjointSets(n);
+		
+		for (int k = 1; k < n; k++) {
+			// merge the forest with the pairs connecting feature k to the prefix
+			int len = 0;
+			int i = 0, j = bucketStart[k];
+			while (i < forestLen || j < bucketStart[k + 1]) {
+				if (j == bucketStart[k + 1] || (i < forestLen && forest[i] < bucketPair.get(j))) {
+					cand[len] = forest[i];
+					candLo[len] = forestLo[i];
+					candHi[len++] = forestHi[i++];
+				} else {
+					cand[len] = bucketPair.get(j);
+					candLo[len] = bucketLo.get(j++);
+					candHi[len++] = k;
+				}
+			}
+			
+			components.reset();
+			forestLen = 0;
+			for (int c = 0; c < len && forestLen < k; c++) {
+				if (components.union(candLo[c], candHi[c])) {
+					forest[forestLen] = cand[c];
+					forestLo[forestLen] = candLo[c];
+					forestHi[forestLen++] = candHi[c];
+				}
+			}
+			
+			// a spanning tree of k + 1 features has k links
+			if (forestLen == k)
+				stop[k + 1] = forest[k - 1];
+		}
+	}
+	
+	/**
+	 * The number of features whose |class correlation| exceeds t
+	 */
+	public int numNodes(double t) {
+		int low = 0, high = relevance.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (relevance[mid] > t)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+	
+	public boolean connected(double t) {
+		return stop[numNodes(t)] >= 0;
+	}
+	
+	/**
+	 * The index (in the sorted pair list) of the last pair added by createConnected(), 
+	 * -1 if the network for threshold t never becomes connected
+	 */
+	public int stopIndex(double t) {
+		return stop[numNodes(t)];
+	}
+	
+	/**
+	 * The correlation at which the network for threshold t becomes connected (0 if it does not)
+	 */
+	public double connectingCorrelation(double t) {
+		int s = stopIndex(t);
+		return s >= 0 ? pairs.r(s) : 0.0;
+	}
+	
+	/**
+	 * The number of links of the connected network for threshold t
+	 */
+	public int numLinks(double t) {
+		int k = numNodes(t);
+		int s = stop[k];
+		if (s < 0)
+			return bucketStart[k];   // all pairs among the first k features
+		
+		int links = 0;
+		for (int b = 1; b < k; b++) {
+			// pairs of the bucket up to s (pair indexes in a bucket are increasing)
+			int low = bucketStart[b], high = bucketStart[b + 1];
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (bucketPair.get(mid) <= s)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			links += low - bucketStart[b];
+		}
+		return links;
+	}
+	
+	/**
+	 * True if thresholds t1 and t2 give the same connected network
+	 */
+	public boolean sameNetwork(double t1, double t2) {
+		return numNodes(t1) == numNodes(t2);
+	}
+	
+	public Attribute[] getAttributes() {
+		return attribute;
+	}
+	
+	public PairOrder getPairOrder() {
+		return pairs;
+	}
+	
+	/**
+	 * Int array on the heap or off-heap
+	 */
+	private static class IntArray {
+		private int[] heap;
+		private MappedArray mapped;
+		
+		IntArray(int length, boolean offHeap) 
+			throws IOException 
+		{
+			if (offHeap)
+				mapped = new MappedArray(Math.max(length, 1), 4);
+			else
+				heap = new int[length];
+		}
+		
+		int get(int i) {
+			return heap != null ? heap[i] : mapped.getInt(i);
+		}
+		
+		void put(int i, int v) {
+			if (heap != null)
+				heap[i] = v;
+			else
+				mapped.putInt(i, v);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package svc.fsfcn;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.math3.stat.ranking.NaturalRanking;
+import org.apache.commons.math3.stat.ranking.RankingAlgorithm;
+
+/**
+ * Spearman correlations between all pairs of attributes. Every column is ranked once
+ * (the same ranking as in SpearmansCorrelation: natural ranking, ties get average ranks),
+ * ranks are centred and scaled to unit norm, so the correlation of two attributes is the
+ * dot product of their rank vectors. The dot products are computed in tiles of columns
+ * and instances (the tile of column vectors stays in cache while it is reused) by a
+ * CorrelationKernel, and tiles are processed in parallel on a fork-join pool.
+ *
+ * The results are within a few ulps of the exact rank correlation. They differ from
+ * SpearmansCorrelation.correlation(...) (Pearson correlation of ranks computed by
+ * SimpleRegression) by the rounding error of the latter, up to 1e-10 for a few hundred
+ * instances, so pairs whose |r| ties up to that error may swap places in the sorted pair list.
+ * Correlations of constant columns are NaN as in commons-math
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class CorrelationEngine {
+	// the number of columns in a tile and the number of instances processed at once
+	private static final int COLUMN_TILE = 32;
+	private static final int ROW_TILE = 1024;
+	
+	// tile pairs computed sequentially by one task
+	private static final int MIN_TASK_TILES = 4;
+	
+	private ForkJoinPool pool;
+	private CorrelationKernel kernel;
+	private RankingAlgorithm ranking = new NaturalRanking();
+	
+	public CorrelationEngine() {
+		this(ForkJoinPool.commonPool());
+	}
+	
+	public CorrelationEngine(ForkJoinPool pool) {
+		this(pool, CorrelationKernel.select());
+	}
+	
+	public CorrelationEngine(ForkJoinPool pool, CorrelationKernel kernel) {
+		this.pool = pool;
+		this.kernel = kernel;
+	}
+	
+	/**
+	 * Correlations between the columns of a data matrix, packed in the order of pairs (i, j), 
+	 * i < j, j = 1, 2, ..., i.e. the correlation of the pair (i, j) is at index j(j - 1)/2 + i
+	 */
+	public double[] correlations(DataMatrix data) {
+		CorrelationStore out = CorrelationStore.onHeap(data.numAttr());
+		correlations(data, out);
+		return out.heapArray();
+	}
+	
+	/**
+	 * Correlations between the columns of a data matrix written to a (possibly off-heap) store
+	 */
+	public void correlations(DataMatrix data, CorrelationStore out) {
+		double[][] z = normalizedRanks(data);
+		correlations(z, data.numInst(), out);
+	}
+	
+	/**
+	 * Normalized rank vectors of all columns of a data matrix
+	 */
+	public double[][] normalizedRanks(DataMatrix data) {
+		double[][] z = new double[data.numAttr()][];
+		for (int a = 0; a < data.numAttr(); a++)
+			z[a] = normalizedRanks(data.column(a));
+		return z;
+	}
+	
+	/**
+	 * Ranks of a column centred and scaled to unit Euclidean norm (NaN if the column is constant)
+	 */
+	public double[] normalizedRanks(double[] column) {
+		int n = column.length;
+		double[] r = ranking.rank(column);
+		
+		// the sum of ranks is n(n + 1)/2 regardless of ties
+		double mean = (n + 1) / 2.0;
+		double ss = 0.0;
+		for (int k = 0; k < n; k++) {
+			r[k] -= mean;
+			ss += r[k] * r[k];
+		}
+		
+		double scale = 1.0 / Math.sqrt(ss);
+		for (int k = 0; k < n; k++)
+			r[k] = ss == 0.0 ? Double.NaN : r[k] * scale;
+		return r;
+	}
+	
+	/**
+	 * The correlation of two normalized rank vectors, rounded exactly as in the tiled computation
+	 */
+	public static double correlation(double[] zi, double[] zj) {
+		double acc = 0.0;
+		for (int k0 = 0; k0 < zi.length; k0 += ROW_TILE) {
+			int k1 = Math.min(k0 + ROW_TILE, zi.length);
+			double s = 0.0;
+			for (int k = k0; k < k1; k++)
+				s += zi[k] * zj[k];
+			acc += s;
+		}
+		return Math.max(-1.0, Math.min(1.0, acc));
+	}
+	
+	/**
+	 * Pairwise dot products of normalized rank vectors (packed as above)
+	 */
+	public double[] correlations(double[][] z, int numInst) {
+		CorrelationStore out = CorrelationStore.onHeap(z.length);
+		correlations(z, numInst, out);
+		return out.heapArray();
+	}
+	
+	public void correlations(double[][] z, int numInst, CorrelationStore r) {
+		int numAttr = z.length;
+		int numTiles = (numAttr + COLUMN_TILE - 1) / COLUMN_TILE;
+		int numTilePairs = numTiles * (numTiles + 1) / 2;
+		
+		TileTask root = new TileTask(kernel, z, numInst, r, numTiles, 0, numTilePairs);
+		if (numTilePairs <= MIN_TASK_TILES)
+			root.compute();
+		else
+			pool.invoke(root);
+	}
+	
+	private static class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private CorrelationKernel kernel;
+		private double[][] z;
+		private int numInst;
+		private CorrelationStore r;
+		private int numTiles;
+		private int from, to;   // range of tile pairs (I, J), I <= J, enumerated row by row
+		
+		TileTask(CorrelationKernel kernel, double[][] z, int numInst, CorrelationStore r, int numTiles, int from, int to) {
+			this.kernel = kernel;
+			this.z = z;
+			this.numInst = numInst;
+			this.r = r;
+			this.numTiles = numTiles;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from > MIN_TASK_TILES) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new TileTask(kernel, z, numInst, r, numTiles, from, mid), 
+					new TileTask(kernel, z, numInst, r, numTiles, mid, to));
+				return;
+			}
+			
+			double[] acc = new double[COLUMN_TILE * COLUMN_TILE];
+			
+			// the tile pair with index from
+			int ti = 0, rest = from;
+			while (rest >= numTiles - ti) {
+				rest -= numTiles - ti;
+				ti++;
+			}
+			int tj = ti + rest;
+			
+			for (int t = from; t < to; t++) {
+				tile(ti, tj, acc);
+				if (++tj == numTiles) {
+					ti++;
+					tj = ti;
+				}
+			}
+		}
+		
+		/**
+		 * Dot products between the columns of tiles ti and tj (ti <= tj)
+		 */
+		private void tile(int ti, int tj, double[] acc) {
+			int i0 = ti * COLUMN_TILE, i1 = Math.min(i0 + COLUMN_TILE, z.length);
+			int j0 = tj * COLUMN_TILE, j1 = Math.min(j0 + COLUMN_TILE, z.length);
+			Arrays.fill(acc, 0.0);
+			
+			for (int k0 = 0; k0 < numInst; k0 += ROW_TILE)
+				kernel.accumulate(z, i0, i1, j0, j1, k0, Math.min(k0 + ROW_TILE, numInst), acc, COLUMN_TILE);
+			
+			for (int i = i0; i < i1; i++) {
+				int base = (i - i0) * COLUMN_TILE - j0;
+				for (int j = Math.max(j0, i + 1); j < j1; j++)
+					r.set(CorrelationStore.index(i, j), Math.max(-1.0, Math.min(1.0, acc[base + j])));
+			}
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package svc.fsfcn;
+
+/**
+ * Inner kernel of the correlation engine: dot products between two tiles of normalized
+ * rank vectors over a range of instances. Every dot product is summed sequentially over
+ * the instances, so all kernels give bit-identical results
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public interface CorrelationKernel {
+	// system property selecting a kernel by name (the default is the fastest available kernel)
+	public static final String PROPERTY = "fsfcn.correlation.kernel";
+	
+	/**
+	 * Adds z[i] . z[j] over instances k0..k1-1 to acc[(i - i0) * stride + (j - j0)] 
+	 * for i in [i0, i1) and j in [max(j0, i + 1), j1)
+	 */
+	public void accumulate(double[][] z, int i0, int i1, int j0, int j1, int k0, int k1, double[] acc, int stride);
+	
+	public String name();
+	
+	/**
+	 * The kernel named by the system property, otherwise the register-blocked kernel
+	 */
+	public static CorrelationKernel select() {
+		String name = System.getProperty(PROPERTY);
+		if (name != null && name.equals(ScalarKernel.NAME))
+			return new ScalarKernel();
+		return new BlockedKernel();
+	}
+}
@@ -0,0 +1,94 @@
+package svc.fsfcn;
+
+import java.io.IOException;
+
+/**
+ * Correlations between all pairs of attributes packed in the upper triangle order: 
+ * the pair (i, j), i < j, is stored at index j(j - 1)/2 + i, which is also the order in 
+ * which Dataset enumerates pairs. The values are held either in a heap array or off-heap 
+ * in a memory-mapped file (for datasets whose correlations do not fit the heap)
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class CorrelationStore {
+	private int numAttr;
+	private long size;
+	private double[] heap;
+	private MappedArray mapped;
+	
+	private CorrelationStore(int numAttr) {
+		this.numAttr = numAttr;
+		this.size = (long) numAttr * (numAttr - 1) / 2;
+	}
+	
+	public static CorrelationStore onHeap(int numAttr) {
+		CorrelationStore s = new CorrelationStore(numAttr);
+		if (s.size > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("[CorrelationStore error] too many pairs for a heap store: " + s.size);
+		s.heap = new double[(int) s.size];
+		return s;
+	}
+	
+	public static CorrelationStore mapped(int numAttr) 
+		throws IOException 
+	{
+		CorrelationStore s = new CorrelationStore(numAttr);
+		s.mapped = new MappedArray(Math.max(s.size, 1), 8);
+		return s;
+	}
+	
+	public static long index(int i, int j) {
+		return i < j ? (long) j * (j - 1) / 2 + i : (long) i * (i - 1) / 2 + j;
+	}
+	
+	/**
+	 * The higher attribute index of the pair stored at the given index
+	 */
+	public static int second(long index) {
+		int j = (int) ((1.0 + Math.sqrt(1.0 + 8.0 * index)) / 2.0);
+		while ((long) j * (j - 1) / 2 > index)
+			j--;
+		while ((long) (j + 1) * j / 2 <= index)
+			j++;
+		return j;
+	}
+	
+	/**
+	 * The lower attribute index of the pair stored at the given index
+	 */
+	public static int first(long index) {
+		int j = second(index);
+		return (int) (index - (long) j * (j - 1) / 2);
+	}
+	
+	double[] heapArray() {
+		return heap;
+	}
+	
+	public int numAttr() {
+		return numAttr;
+	}
+	
+	public long size() {
+		return size;
+	}
+	
+	public boolean isMapped() {
+		return mapped != null;
+	}
+	
+	public double get(long index) {
+		return heap != null ? heap[(int) index] : mapped.getDouble(index);
+	}
+	
+	public double get(int i, int j) {
+		return get(index(i, j));
+	}
+	
+	public void set(long index, double r) {
+		if (heap != null)
+			heap[(int) index] = r;
+		else
+			mapped.putDouble(index, r);
+	}
+}
@@ -0,0 +1,75 @@
+package svc.fsfcn;
+
+/**
+ * Data matrix stored column by column in one contiguous array: the values of attribute a
+ * are values()[offset(a)], ..., values()[offset(a) + numInst() - 1], so column-wise
+ * computations (correlations, mutual information, subsets) read columns in place
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class DataMatrix {
+	private int numInst, numAttr;
+	private double[] values;
+
+	public DataMatrix(int numInst, int numAttr) {
+		if ((long) numInst * numAttr > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("[DataMatrix error] " + numInst + " x " + numAttr + " values do not fit into an array");
+		this.numInst = numInst;
+		this.numAttr = numAttr;
+		this.values = new double[numInst * numAttr];
+	}
+
+	public int numInst() {
+		return numInst;
+	}
+
+	public int numAttr() {
+		return numAttr;
+	}
+
+	public double get(int inst, int attr) {
+		return values[attr * numInst + inst];
+	}
+
+	public void set(int inst, int attr, double v) {
+		values[attr * numInst + inst] = v;
+	}
+
+	/**
+	 * The backing array (column-major)
+	 */
+	public double[] values() {
+		return values;
+	}
+
+	/**
+	 * The index of the first value of a column in the backing array
+	 */
+	public int offset(int attr) {
+		return attr * numInst;
+	}
+
+	/**
+	 * Copy of a column
+	 */
+	public double[] column(int attr) {
+		double[] c = new double[numInst];
+		System.arraycopy(values, attr * numInst, c, 0, numInst);
+		return c;
+	}
+
+	/**
+	 * Copy of a row (the values of one instance)
+	 */
+	public double[] row(int inst) {
+		double[] r = new double[numAttr];
+		for (int a = 0, k = inst; a < numAttr; a++, k += numInst)
+			r[a] = values[k];
+		return r;
+	}
+
+	public void setRow(int inst, double[] row) {
+		for (int a = 0, k = inst; a < numAttr; a++, k += numInst)
+			values[k] = row[a];
+	}
+}
@@ -14,10 +14,10 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.math3.stat.correlation.SpearmansCorrelation;
 
-import JavaMI.MutualInformation;
 import weka.core.Instances;
 
 /**
@@ -38,12 +38,29 @@ public class Dataset {
 	protected Attribute[] attrBeforeSort;        // the order of attributes before sorting
 	protected Attribute[] attribute;             // attributes in the dataset
 	protected String[] classAttr;                // the class attribute
-	protected double[][] data;                   // the data matrix
+	protected DataMatrix data;                   // the data matrix (column-major), null if dropped by the loader
 	
-	private SpearmansCorrelation sc = new SpearmansCorrelation();
-	private double[][] attrCorrelation;
-	private ArrayList<AttributePair> attrPairs = 
-		new ArrayList<AttributePair>();
+	// statistics computed by a loader while reading (optional, used and released by init)
+	protected double[][] ranks;                  // normalized rank vectors of attributes (see CorrelationEngine)
+	protected double[] classMI;                  // mutual information between attributes and class
+	
+	// datasets with more attribute pairs keep correlations off-heap (unless set by the system property)
+	public static final long MAX_HEAP_PAIRS = 1L << 24;
+	public static final String PAIR_STORE_PROPERTY = "fsfcn.pairs.store";   // "heap", "mapped" or "lsh"
+	
+	// approximate pair discovery ("lsh" pair store, see LshPairOrder): pairs with |r| >= LSH_R 
+	// are found with probability LSH_RECALL, verified pairs with |r| < LSH_MIN_R are dropped
+	public static final String LSH_R_PROPERTY = "fsfcn.lsh.r";
+	public static final String LSH_RECALL_PROPERTY = "fsfcn.lsh.recall";
+	public static final String LSH_ROWS_PROPERTY = "fsfcn.lsh.rows";
+	public static final String LSH_MIN_R_PROPERTY = "fsfcn.lsh.minr";
+	public static final long LSH_SEED = 0x46534643L;
+	
+	// the class encoded as 0 (other classes get codes 1, 2, ... in the order of appearance)
+	public static final String POSITIVE_CLASS = "AD";
+	
+	private ArrayList<AttributePair> attrPairs;
+	private PairOrder pairOrder;
 	
 	public Dataset(Attribute[] attribute, ArrayList<Instance> insts) {
 		this.attribute = attribute;
@@ -51,29 +68,63 @@ public class Dataset {
 		this.numInst = insts.size();
 		this.inputFile = "Reduced dataset";
 		
-		this.data = new double[insts.size()][attribute.length];
+		this.data = new DataMatrix(insts.size(), attribute.length);
 		this.classAttr = new String[insts.size()];
 		for (int i = 0; i < insts.size(); i++) {
-			data[i] = insts.get(i).getAttrs();
+			data.setRow(i, insts.get(i).getAttrs());
 			classAttr[i] = insts.get(i).getClassAttr();
 		}
 		
 		init();
 	}
 	
+	/**
+	 * Dataset of a data matrix built in memory (attributes in the order of matrix columns)
+	 */
+	public Dataset(String name, Attribute[] attribute, DataMatrix data, String[] classAttr) {
+		if (attribute.length != data.numAttr() || classAttr.length != data.numInst())
+			throw new IllegalArgumentException("ERR [class: Dataset, constructor, the data matrix does not match attributes or instances]");
+		
+		this.inputFile = name;
+		this.attribute = attribute;
+		this.numAttr = attribute.length;
+		this.numInst = classAttr.length;
+		this.data = data;
+		this.classAttr = classAttr;
+		
+		init();
+	}
+	
 	public Dataset(String inputFile) 
 		throws IOException
+	{
+		read(inputFile);
+	}
+	
+	/**
+	 * For subclasses that set their loading options before calling read()
+	 */
+	protected Dataset() {
+	}
+	
+	protected void read(String inputFile) 
+		throws IOException
 	{
 		this.inputFile = inputFile;
 		load();
 		init();
 	}
 	
+	/**
+	 * Dataset of a weka dataset whose first attribute is the class and the other attributes 
+	 * are numeric. Values are taken as stored by weka (not rounded as in the string form of 
+	 * an instance), missing values are not allowed
+	 */
 	public Dataset(Instances wekaDataset) {
 		numAttr = wekaDataset.numAttributes() - 1;
 		numInst = wekaDataset.numInstances();
 		
-		data = new double[numInst][numAttr];
+		data = new DataMatrix(numInst, numAttr);
 		classAttr = new String[numInst];
 		
 		attribute = new Attribute[numAttr];
@@ -82,23 +133,23 @@ public class Dataset {
 			attribute[i] = new Attribute(i, wekaDataset.attribute(i + 1).name());
 		}
 		
-		Iterator<weka.core.Instance> it = wekaDataset.iterator();
-		int noInst = 0;
-		while (it.hasNext()) {
-			weka.core.Instance inst = it.next();
-			String st = inst.toString();
-			String[] tok = st.split(",");
-			if (tok.length != numAttr + 1) {
-				System.out.println("ERR [class: Data, constructor, loading from weka dataset]");
-			}
-			
-			classAttr[noInst] = tok[0];
-			for (int i = 1; i < tok.length; i++) {
-				// class attribute has index 0
-				data[noInst][i - 1] = Double.parseDouble(tok[i]);
+		// values are read column by column as doubles (no formatting and parsing of instances)
+		double[] values = data.values();
+		for (int i = 0; i < numAttr; i++) {
+			int offset = data.offset(i);
+			for (int k = 0; k < numInst; k++) {
+				double v = wekaDataset.instance(k).value(i + 1);
+				if (Double.isNaN(v)) {
+					throw new IllegalArgumentException("ERR [class: Dataset, constructor, missing value in weka dataset, attribute " 
+						+ wekaDataset.attribute(i + 1).name() + "]");
+				}
+				values[offset + k] = v;
 			}
-			
-			++noInst;
+		}
+		
+		// class labels as written in the weka dataset (class attribute has index 0)
+		for (int k = 0; k < numInst; k++) {
+			classAttr[k] = wekaDataset.instance(k).toString(0);
 		}
 		
 		init();
@@ -138,35 +189,71 @@ public class Dataset {
 	}
 	
 	public void printData() {
+		requireValues("printData");
 		for (int i = 0; i < numInst; i++) {
 			System.out.print(classAttr[i] + ": ");
 			for (int j = 0; j < numAttr; j++) 
-				System.out.print(data[i][j] + " ");
+				System.out.print(data.get(i, j) + " ");
 			System.out.println();
 		}
 	}
 	
+	/**
+	 * Whether attribute values are kept after loading (see TDataset)
+	 */
+	public boolean hasValues() {
+		return data != null;
+	}
+	
+	private void requireValues(String method) {
+		if (data == null)
+			throw new IllegalStateException("ERR [class: Dataset, " + method + ", attribute values were dropped after loading]");
+	}
+	
 	protected void load() throws IOException {
 		throw new IOException("Error, this method should be overriden");
 	}
 	
 	private void init() {
 		// compute correlations between attributes
-		attrCorrelation = new double[numAttr][numAttr];
-		for (int j = 1; j < numAttr; j++) {
-			for (int i = 0; i < j; i++) {
-				double c = __correlation(i, j);
-				attrCorrelation[i][j] = c;
-				attrCorrelation[j][i] = c;
-				attrPairs.add(new AttributePair(attribute[i], attribute[j], c));
+		CorrelationStore store = null;
+		double[][] z = null;
+		if (numInst >= 2 && "lsh".equals(System.getProperty(PAIR_STORE_PROPERTY))) {
+			z = ranks != null ? ranks : new CorrelationEngine().normalizedRanks(data);
+		} else if (numInst >= 2 && useMappedStore()) {
+			try {
+				store = CorrelationStore.mapped(numAttr);
+			} catch (IOException ioe) {
+				throw new RuntimeException("ERR [class: Dataset, init, cannot map the correlation store]", ioe);
+			}
+			if (ranks != null)
+				new CorrelationEngine().correlations(ranks, numInst, store);
+			else
+				new CorrelationEngine().correlations(data, store);
+		} else {
+			double[] c = null;
+			if (numInst >= 2)
+				c = ranks != null ? new CorrelationEngine().correlations(ranks, numInst) : new CorrelationEngine().correlations(data);
+			attrPairs = new ArrayList<AttributePair>();
+			int k = 0;
+			for (int j = 1; j < numAttr; j++) {
+				for (int i = 0; i < j; i++) {
+					attrPairs.add(new AttributePair(attribute[i], attribute[j], c != null ? c[k++] : __correlation(i, j)));
+				}
 			}
+			
+			Collections.sort(attrPairs);
+			pairOrder = new PairList(attrPairs);
 		}
 		
-		Collections.sort(attrPairs);
-		
 		// compute correlations between each attribute and class
+		double[] mi = classMI;
+		if (mi == null)
+			mi = new MutualInformationEngine().mutualInformation(data, MutualInformationEngine.encodeClasses(classAttr, POSITIVE_CLASS));
+		ranks = null;
+		classMI = null;
 		for (int i = 0; i < numAttr; i++) {
-			attribute[i].setClassCorrelation(__mi(i));
+			attribute[i].setClassCorrelation(mi[i]);
 		}
 		
 		attrBeforeSort = new Attribute[attribute.length];
@@ -174,6 +261,18 @@ public class Dataset {
 			attrBeforeSort[i] = attribute[i];
 		}
 		
+		if (store != null) {
+			try {
+				pairOrder = new SortedPairIndex(store, attrBeforeSort);
+			} catch (IOException ioe) {
+				throw new RuntimeException("ERR [class: Dataset, init, cannot map the pair index]", ioe);
+			}
+		} else if (z != null) {
+			int rows = lshRows();
+			int bands = LshPairOrder.bandsFor(lshR(), lshRecall(), rows);
+			pairOrder = new LshPairOrder(z, attrBeforeSort, bands, rows, lshMinR(), LSH_SEED, ForkJoinPool.commonPool());
+		}
+		
 		Arrays.sort(attribute, new Comparator<Attribute>() {
 			public int compare(Attribute o1, Attribute o2) {
 				if (Math.abs(o1.getClassCorrelation()) > Math.abs(o2.getClassCorrelation()))
@@ -186,16 +285,43 @@ public class Dataset {
 		});
 	}
 	
+	/**
+	 * The pair store set by the system property ("auto" if not set: chosen by the number of 
+	 * attribute pairs), with the parameters of approximate pair discovery for the "lsh" store
+	 */
+	public static String pairStoreConfiguration() {
+		String store = System.getProperty(PAIR_STORE_PROPERTY, "auto");
+		if (!store.equals("lsh"))
+			return store;
+		return store + " r=" + lshR() + " recall=" + lshRecall() + " rows=" + lshRows() + " minr=" + lshMinR() + " seed=" + LSH_SEED;
+	}
+	
+	private static double lshR() {
+		return Double.parseDouble(System.getProperty(LSH_R_PROPERTY, "0.7"));
+	}
+	
+	private static double lshRecall() {
+		return Double.parseDouble(System.getProperty(LSH_RECALL_PROPERTY, "0.9"));
+	}
+	
+	private static int lshRows() {
+		return Integer.parseInt(System.getProperty(LSH_ROWS_PROPERTY, "16"));
+	}
+	
+	private static double lshMinR() {
+		return Double.parseDouble(System.getProperty(LSH_MIN_R_PROPERTY, "0.0"));
+	}
+	
+	private boolean useMappedStore() {
+		String store = System.getProperty(PAIR_STORE_PROPERTY);
+		if (store != null)
+			return store.equals("mapped");
+		return (long) numAttr * (numAttr - 1) / 2 > MAX_HEAP_PAIRS;
+	}
+	
+	// the reference implementation (used for datasets with less than two instances, where it fails)
 	private double __correlation(int i, int j) {
-		double[] src = new double[numInst];
-		double[] dst = new double[numInst];
-		
-		for (int k = 0; k < numInst; k++) {
-			src[k] = data[k][i];
-			dst[k] = data[k][j];
-		}
-		
-		return sc.correlation(src, dst);
+		return new SpearmansCorrelation().correlation(data.column(i), data.column(j));
 	}
 	
 	/*
@@ -208,8 +334,8 @@ public class Dataset {
 		
 		for (int j = 1; j < numInst; j++) {
 			for (int i = 0; i < j; i++) {
-				double x = data[i][attrIndex];
-				double y = data[j][attrIndex];
+				double x = data.get(i, attrIndex);
+				double y = data.get(j, attrIndex);
 				double d = 0.0;
 				if (x > y)
 					d = x - y;
@@ -250,28 +376,35 @@ public class Dataset {
 	}
 	*/
 	
-	private double __mi(int attrIndex) {
-		double[] fv = new double[numInst];
-		double[] sv = new double[numInst];
-		for (int i = 0; i < numInst; i++) {
-			fv[i] = data[i][attrIndex];
-			sv[i] = classAttr[i].equals("AD") ? 0 : 1;
-		}
-		
-		return MutualInformation.calculateMutualInformation(fv, sv);
-	}
-	
 	public Attribute[] getAttributes() {
 		return attribute;
 	}
 	
-	public ArrayList<AttributePair> getAttributePairs() {
+	/**
+	 * Attribute pairs sorted by |r|
+	 */
+	public PairOrder getPairOrder() {
+		return pairOrder;
+	}
+	
+	/**
+	 * Attribute pairs sorted by |r| as a list of objects (materialized on the first call 
+	 * when correlations are kept off-heap)
+	 */
+	public synchronized ArrayList<AttributePair> getAttributePairs() {
+		if (attrPairs == null) {
+			ArrayList<AttributePair> pairs = new ArrayList<AttributePair>(pairOrder.size());
+			for (int k = 0; k < pairOrder.size(); k++)
+				pairs.add(pairOrder.get(k));
+			attrPairs = pairs;
+		}
 		return attrPairs;
 	}
 	
 	public void subset(String configFile, String outFile) 
 		throws IOException
 	{
+		requireValues("subset");
 		System.out.println("Starting subdata extraction for " + configFile);
 		BufferedReader br = new BufferedReader(new FileReader(configFile));
 		LinkedList<String> selection = new LinkedList<String>();
@@ -286,7 +419,7 @@ public class Dataset {
 		int numSelected = selection.size();
 		System.out.println("The number of selected attributes: " + numSelected);
 		
-		double[][] subdata = new double[numInst][numSelected];
+		DataMatrix subdata = new DataMatrix(numInst, numSelected);
 	
 		for (int k = 0; k < selection.size(); k++) {
 			String attr = selection.get(k);
@@ -294,9 +427,7 @@ public class Dataset {
 			if (attrIndex == -1)
 				throw new IllegalArgumentException("Invalid attribute |" + attr + "|");
 			
-			for (int i = 0; i < numInst; i++) {
-				subdata[i][k] = data[i][attrIndex];
-			}
+			System.arraycopy(data.values(), data.offset(attrIndex), subdata.values(), subdata.offset(k), numInst);
 		}
 		
 		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(outFile)));
@@ -311,7 +442,7 @@ public class Dataset {
 		for (int i = 0; i < numInst; i++) {
 			out.print(classAttr[i] + ",");
 			for (int j = 0; j < selection.size(); j++) {
-				out.print(subdata[i][j]);
+				out.print(subdata.get(i, j));
 				if (j < selection.size() - 1)
 					out.print(",");
 			}
@@ -350,9 +481,10 @@ public class Dataset {
 	}
 	
 	public Dataset removeInstances(int numInstances) {
+		requireValues("removeInstances");
 		ArrayList<Instance> dataSet = new ArrayList<Instance>(numInst);
 		for (int k = 0; k < numInst; k++) {
-			Instance inst = new Instance(classAttr[k], data[k]);
+			Instance inst = new Instance(classAttr[k], data.row(k));
 			dataSet.add(inst);
 		}
 		
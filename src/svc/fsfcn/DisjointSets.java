@@ -0,0 +1,61 @@
+package svc.fsfcn;
+
+/**
+ * Disjoint-set forest (union by size, path halving) over elements 0..n-1
+ * that keeps track of the number of sets
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class DisjointSets {
+	private int[] parent;
+	private int[] size;
+	private int count;
+	
+	public DisjointSets(int n) {
+		parent = new int[n];
+		size = new int[n];
+		reset();
+	}
+	
+	/**
+	 * Makes every element a singleton set again
+	 */
+	public void reset() {
+		for (int i = 0; i < parent.length; i++) {
+			parent[i] = i;
+			size[i] = 1;
+		}
+		count = parent.length;
+	}
+	
+	public int find(int x) {
+		while (parent[x] != x) {
+			parent[x] = parent[parent[x]];
+			x = parent[x];
+		}
+		return x;
+	}
+	
+	/**
+	 * Merges the sets containing x and y, returns false if they were already in the same set
+	 */
+	public boolean union(int x, int y) {
+		int rx = find(x), ry = find(y);
+		if (rx == ry)
+			return false;
+		
+		if (size[rx] < size[ry]) {
+			int t = rx;
+			rx = ry;
+			ry = t;
+		}
+		parent[ry] = rx;
+		size[rx] += size[ry];
+		count--;
+		return true;
+	}
+	
+	public int count() {
+		return count;
+	}
+}
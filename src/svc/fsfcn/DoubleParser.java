@@ -0,0 +1,94 @@
+package svc.fsfcn;
+
+import java.nio.charset.Charset;
+
+/**
+ * Parses decimal numbers from bytes without creating strings. Plain decimals with at most
+ * 18 significant digits whose value is exactly representable after one scaling by a power
+ * of ten (mantissa < 2^53, |exponent| <= 22) are computed directly and are correctly rounded;
+ * other tokens (long mantissas, hexadecimal, NaN, Infinity, surrounding whitespace, type
+ * suffixes, malformed input) go to Double.parseDouble, so results and NumberFormatExceptions
+ * are the same as those of Double.parseDouble. Not thread-safe (one parser per thread)
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class DoubleParser {
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	private static final long MAX_EXACT = 1L << 53;
+	private static final int MAX_DIGITS = 18;
+
+	private Charset charset;
+
+	public DoubleParser(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * The number in b[from], ..., b[to - 1]
+	 */
+	public double parse(byte[] b, int from, int to) {
+		int k = from;
+		boolean negative = false;
+		if (k < to && (b[k] == '-' || b[k] == '+'))
+			negative = b[k++] == '-';
+
+		long mantissa = 0;
+		int digits = 0, exponent = 0;
+		boolean any = false;
+		for (; k < to; k++) {
+			int d = b[k] - '0';
+			if (d < 0 || d > 9)
+				break;
+			any = true;
+			if (mantissa != 0 || d != 0) {
+				mantissa = 10 * mantissa + d;
+				digits++;
+			}
+		}
+		if (k < to && b[k] == '.') {
+			for (k++; k < to; k++) {
+				int d = b[k] - '0';
+				if (d < 0 || d > 9)
+					break;
+				any = true;
+				if (mantissa != 0 || d != 0) {
+					mantissa = 10 * mantissa + d;
+					digits++;
+				}
+				exponent--;
+			}
+		}
+		if (any && k < to && (b[k] == 'e' || b[k] == 'E')) {
+			k++;
+			boolean negativeExp = false;
+			if (k < to && (b[k] == '-' || b[k] == '+'))
+				negativeExp = b[k++] == '-';
+			int e = 0, start = k;
+			for (; k < to && e < 10000; k++) {
+				int d = b[k] - '0';
+				if (d < 0 || d > 9)
+					break;
+				e = 10 * e + d;
+			}
+			if (k == start)
+				any = false;
+			exponent += negativeExp ? -e : e;
+		}
+
+		if (!any || k != to || digits > MAX_DIGITS || mantissa > MAX_EXACT || exponent < -22 || exponent > 22)
+			return Double.parseDouble(string(b, from, to));
+
+		double v = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+		return negative ? -v : v;
+	}
+
+	/**
+	 * The bytes b[from], ..., b[to - 1] decoded to a string
+	 */
+	public String string(byte[] b, int from, int to) {
+		return new String(b, from, to - from, charset);
+	}
+}
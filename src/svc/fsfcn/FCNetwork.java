@@ -5,29 +5,37 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Comparator;
 
 import edu.uci.ics.jung.graph.UndirectedSparseGraph;
 import edu.uci.ics.jung.graph.util.EdgeType;
 
 /**
- * Feature correlation network
+ * Feature correlation network. Nodes are kept as flags over the features sorted by 
+ * relevance and links as positions in the pair order of the dataset, the int-indexed CSR form 
+ * (toCSR()) used for selection, clustering and quality metrics and the JUNG view 
+ * (getGraph()) are built on demand
  * 
  * @author svc (svc@dmi.uns.ac.rs)
  */
 public class FCNetwork {
-	private UndirectedSparseGraph<Attribute, AttributePair> g = 
-		new UndirectedSparseGraph<Attribute, AttributePair>();
-	
 	private Attribute[] attribute;
-	private ArrayList<AttributePair> attributePairs;
+	private PairOrder pairs;
 	private double minAttrCorrelation;
 	
 	private double relevantFeatureThreshold;
 	
+	private int[] rank;            // the position of a feature in the relevance order, by feature id
+	private boolean[] present;     // nodes, by relevance rank
+	private int numNodes;
+	private int[] link = new int[16];   // links, indexes of pairs
+	private int numLinks;
+	
+	// derived representations, rebuilt after modifications
+	private CSRGraph csr;
+	private UndirectedSparseGraph<Attribute, AttributePair> view;
+	
 	public FCNetwork(Dataset ds) {
 		this(ds, 0.05); // the default value of the feature relevance threshold
 	}
@@ -35,60 +43,96 @@ public class FCNetwork {
 	public FCNetwork(Dataset ds, double relevantFeatureThreshold) {
 		this.relevantFeatureThreshold = relevantFeatureThreshold;
 		attribute = ds.getAttributes();
-		attributePairs = ds.getAttributePairs();
-	
+		pairs = ds.getPairOrder();
+		
+		int maxId = 0;
+		for (int i = 0; i < attribute.length; i++)
+			maxId = Math.max(maxId, attribute[i].getId());
+		rank = new int[maxId + 1];
+		for (int i = 0; i < attribute.length; i++)
+			rank[attribute[i].getId()] = i;
+		
+		present = new boolean[attribute.length];
 		for (int i = 0; i < attribute.length; i++) {
 			if (Math.abs(attribute[i].getClassCorrelation()) > relevantFeatureThreshold)
-				g.addVertex(attribute[i]);
+				addNode(i);
 		}
 	}
 	
+	private void addNode(int r) {
+		if (!present[r]) {
+			present[r] = true;
+			numNodes++;
+			csr = null;
+			view = null;
+		}
+	}
+	
+	/**
+	 * Adds the pair with the given index as a link (and its features as nodes)
+	 */
+	private void addLink(int pairIndex) {
+		addNode(rank[pairs.atr1(pairIndex)]);
+		addNode(rank[pairs.atr2(pairIndex)]);
+		if (numLinks == link.length)
+			link = Arrays.copyOf(link, 2 * link.length);
+		link[numLinks++] = pairIndex;
+		csr = null;
+		view = null;
+	}
+	
+	private boolean contains(int id) {
+		return present[rank[id]];
+	}
+	
+	/**
+	 * Adds links in the order of decreasing |r| until the network becomes connected,
+	 * connectivity is tracked incrementally by a disjoint-set structure
+	 */
 	public void createConnected() {
-		for (int i = 0; i < attributePairs.size(); i++) {
-			AttributePair p = attributePairs.get(i);
-			Attribute src = p.getAtr1();
-			Attribute dst = p.getAtr2();
-			if (g.containsVertex(src) && g.containsVertex(dst)) {
-				g.addEdge(p, src, dst, EdgeType.UNDIRECTED);
-				if (connected()) {
-					minAttrCorrelation = p.getR();
+		// node index by relevance rank
+		int[] index = new int[attribute.length];
+		int n = 0;
+		for (int i = 0; i < attribute.length; i++)
+			index[i] = present[i] ? n++ : -1;
+		
+		DisjointSets components = new DisjointSets(n);
+		for (int i = 0; i < pairs.size(); i++) {
+			int src = index[rank[pairs.atr1(i)]];
+			int dst = index[rank[pairs.atr2(i)]];
+			if (src >= 0 && dst >= 0) {
+				addLink(i);
+				components.union(src, dst);
+				if (components.count() == 1) {
+					minAttrCorrelation = pairs.r(i);
 					break;
 				}
 			}
 		}
 	}
 	
-	private boolean connected() {
-		LinkedList<Attribute> q = new LinkedList<Attribute>();
-		HashSet<String> visited = new HashSet<String>();
-		Attribute start = g.getVertices().iterator().next();
-		q.add(start);
-		visited.add(start.getName());
-		
-		while (!q.isEmpty()) {
-			Attribute current = q.removeFirst();
-			Iterator<Attribute> nit = g.getNeighbors(current).iterator();
-			while (nit.hasNext()) {
-				Attribute n = nit.next();
-				if (!visited.contains(n.getName())) {
-					visited.add(n.getName());
-					q.addLast(n);
-				}
-			}
+	/**
+	 * Creates the same network as createConnected() using the precomputed connectivity table
+	 * of the dataset (no connectivity checks are needed)
+	 */
+	public void createConnected(ConnectivityTable ct) {
+		int s = ct.stopIndex(relevantFeatureThreshold);
+		int last = s >= 0 ? s : pairs.size() - 1;
+		for (int i = 0; i <= last; i++) {
+			if (contains(pairs.atr1(i)) && contains(pairs.atr2(i)))
+				addLink(i);
 		}
 		
-		return visited.size() == g.getVertexCount();
+		if (s >= 0)
+			minAttrCorrelation = pairs.r(s);
 	}
 	
 	public void createThreshold(double t) {
-		for (int i = 0; i < attributePairs.size(); i++) {
-			AttributePair p = attributePairs.get(i);
-			Attribute src = p.getAtr1();
-			Attribute dst = p.getAtr2();
-			double r = p.getR();
+		for (int i = 0; i < pairs.size(); i++) {
+			double r = pairs.r(i);
 			if (Math.abs(r) >= t) {
-				g.addEdge(p, src, dst, EdgeType.UNDIRECTED);
-				minAttrCorrelation = p.getR();
+				addLink(i);
+				minAttrCorrelation = r;
 			}
 			else
 				break;
@@ -96,76 +140,149 @@ public class FCNetwork {
 	}
 	
 	public void info() {
-		double avgDeg = 2.0 * g.getEdgeCount() / (double) g.getVertexCount();
+		double avgDeg = 2.0 * numLinks / (double) numNodes;
 		System.out.println(
-			"#nodes = " + g.getVertexCount() + 
-			", #links = " + g.getEdgeCount() + 
+			"#nodes = " + numNodes + 
+			", #links = " + numLinks + 
 			", avgdeg = " + avgDeg + 
 			", minR = " + minAttrCorrelation + 
-			", maxR = " + attributePairs.get(0).getR() + 
+			", maxR = " + pairs.r(0) + 
 			", maxAttrClassCorrelation = " + attribute[0].getClassCorrelation()
 		);
 	}
 	
-	public UndirectedSparseGraph<Attribute, AttributePair> getGraph() {
-		return g;
+	public int numNodes() {
+		return numNodes;
 	}
 	
-	public void printNodes() {
-		System.out.println(g.getVertices());
+	public int numLinks() {
+		return numLinks;
 	}
 	
-	public int[] selectWithoutClustering() {
-		ArrayList<Attribute> nodeList = new ArrayList<Attribute>();
-		Iterator<Attribute> it = g.getVertices().iterator();
-		while (it.hasNext()) {
-			Attribute node = it.next();
-			nodeList.add(node);	
+	/**
+	 * JUNG view of the network (built on the first call after a modification)
+	 */
+	public UndirectedSparseGraph<Attribute, AttributePair> getGraph() {
+		if (view == null) {
+			UndirectedSparseGraph<Attribute, AttributePair> g = 
+				new UndirectedSparseGraph<Attribute, AttributePair>();
+			for (int i = 0; i < attribute.length; i++)
+				if (present[i])
+					g.addVertex(attribute[i]);
+			for (int k = 0; k < numLinks; k++) {
+				AttributePair p = pairs.get(link[k]);
+				g.addEdge(p, p.getAtr1(), p.getAtr2(), EdgeType.UNDIRECTED);
+			}
+			view = g;
 		}
 		
-		Collections.sort(nodeList);
-		ArrayList<Attribute> selection = new ArrayList<Attribute>();
-		
-		while (!nodeList.isEmpty()) {
-			Attribute selected = nodeList.get(0);
-			selection.add(selected);
-			ArrayList<Attribute> toRemove = new ArrayList<Attribute>();
-			toRemove.add(selected);
-			toRemove.addAll(g.getNeighbors(selected));
+		return view;
+	}
+	
+	/**
+	 * CSR form of the network, nodes are numbered in the order of decreasing relevance
+	 */
+	public CSRGraph toCSR() {
+		if (csr == null) {
+			int[] index = new int[attribute.length];
+			Attribute[] node = new Attribute[numNodes];
+			int n = 0;
+			for (int i = 0; i < attribute.length; i++) {
+				if (present[i]) {
+					node[n] = attribute[i];
+					index[i] = n++;
+				}
+			}
 			
-			for (int i = 0; i < toRemove.size(); i++) {
-				g.removeVertex(toRemove.get(i));
+			int[] src = new int[numLinks];
+			int[] dst = new int[numLinks];
+			double[] r = new double[numLinks];
+			for (int k = 0; k < numLinks; k++) {
+				src[k] = index[rank[pairs.atr1(link[k])]];
+				dst[k] = index[rank[pairs.atr2(link[k])]];
+				r[k] = pairs.r(link[k]);
 			}
+			csr = CSRGraph.of(node, src, dst, r);
+		}
+		
+		return csr;
+	}
+	
+	public void printNodes() {
+		ArrayList<Attribute> nodes = new ArrayList<Attribute>();
+		for (int i = 0; i < attribute.length; i++)
+			if (present[i])
+				nodes.add(attribute[i]);
+		System.out.println(nodes);
+	}
 	
-			for (int i = 0; i < toRemove.size(); i++) {
-				nodeList.remove(toRemove.get(i));
+	/**
+	 * Selection without clustering: the most relevant remaining feature is selected and 
+	 * removed together with its neighbours until no features remain (the network is not modified)
+	 */
+	public int[] selectWithoutClustering() {
+		CSRGraph g = toCSR();
+		int n = g.numNodes();
+		
+		// nodes sorted by class correlation (Attribute order), ties in the order of relevance
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				return g.node(o1).compareTo(g.node(o2));
 			}
+		});
+		
+		boolean[] removed = new boolean[n];
+		int[] selection = new int[n];
+		int numSelected = 0;
+		for (int k = 0; k < n; k++) {
+			int i = order[k];
+			if (removed[i])
+				continue;
+			
+			selection[numSelected++] = i;
+			removed[i] = true;
+			for (int e = g.begin(i); e < g.end(i); e++)
+				removed[g.target(e)] = true;
 		}
 		
-		int[] ret = new int[selection.size() + 1];
-		for (int i = 0; i < selection.size(); i++) {
-			ret[i] = selection.get(i).getId() + 1;   // IMPORTANT: class attribute has index 0
+		int[] ret = new int[numSelected + 1];
+		for (int i = 0; i < numSelected; i++) {
+			ret[i] = g.node(selection[i]).getId() + 1;   // IMPORTANT: class attribute has index 0
 		}
-		ret[selection.size()] = 0; // add class attribute to selected attributes
+		ret[numSelected] = 0; // add class attribute to selected attributes
 		return ret;
 	}
 	
+	/**
+	 * Saves the network in the compact binary format (see CSRGraph)
+	 */
+	public void saveBinary(String outFile) 
+		throws IOException
+	{
+		toCSR().save(outFile);
+	}
+	
+	/**
+	 * Saves the network in the text format (nodes, "links", links), useful for debugging
+	 */
 	public void save(String outFile) 
 		throws IOException
 	{
 		PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(outFile)));
 		
-		Iterator<Attribute> nit = g.getVertices().iterator();
-		while (nit.hasNext()) {
-			Attribute a = nit.next();
-			pw.println(a.getId() + "," + a.getName() + "," + a.getClassCorrelation());
+		for (int i = 0; i < attribute.length; i++) {
+			if (present[i]) {
+				Attribute a = attribute[i];
+				pw.println(a.getId() + "," + a.getName() + "," + a.getClassCorrelation());
+			}
 		}
 		
 		pw.println("links");
-		Iterator<AttributePair> lit = g.getEdges().iterator();
-		while (lit.hasNext()) {
-			AttributePair ap = lit.next();
-			pw.println(ap.getAtr1().getId() + "," + ap.getAtr2().getId() + "," + ap.getR());
+		for (int k = 0; k < numLinks; k++) {
+			pw.println(pairs.atr1(link[k]) + "," + pairs.atr2(link[k]) + "," + pairs.r(link[k]));
 		}
 		
 		pw.close();
@@ -1,47 +1,32 @@
 package svc.fsfcn;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map.Entry;
+import java.util.Comparator;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
-
-import edu.uci.ics.jung.graph.UndirectedSparseGraph;
-import jsc.independentsamples.MannWhitneyTest;
+import svc.fsfcn.clustering.Clusterer;
+import svc.fsfcn.clustering.NativeClusterer;
+import svc.fsfcn.clustering.Partition;
 
 /**
  * FSFCN -- feature selection based on feature correlation networks (main class)
- * The class uses the python igraph-based script for community detection
+ * Community detection is performed by a clusterer, by default the native implementations
+ * of Walktrap (WT), fast greedy (FG), Louvain (LV) and Infomap (IM) algorithms
  * 
  * @author svc (svc@dmi.uns.ac.rs)
  */
 public class FSFCN {
-	// feature correlation network file
-	private static final String FCN_FILENAME = "fcn.net";
-	
-	// files containing features selected by different FSFCN variants
-	private static final String WT_OUT = "wt.cfg";
-	private static final String FG_OUT = "fg.cfg";
-	private static final String LV_OUT = "lv.cfg";
-	private static final String IM_OUT = "im.cfg";
-	
-	// files containing partitions of feature correlation networks for different community detection techniques
-	private static final String WT_INF = "wt.cfg.cl";
-	private static final String FG_INF = "fg.cfg.cl";
-	private static final String LV_INF = "lv.cfg.cl";
-	private static final String IM_INF = "im.cfg.cl";
-	
 	// feature correlation network
 	private FCNetwork fcn; 
 	
+	// int-indexed snapshot of the feature correlation network used by native community detection
+	private CSRGraph graph;
+	
+	// community detection
+	private Clusterer clusterer = new NativeClusterer();
+	private Partition[] partition;
+	
 	// selected features
 	private int[] wt, fg, lv, im;
 	
@@ -71,86 +56,61 @@ public class FSFCN {
 		this.fcn = fcn;
 	}
 	
+	public FSFCN(FCNetwork fcn, Clusterer clusterer) {
+		this.fcn = fcn;
+		this.clusterer = clusterer;
+	}
+	
 	public void selectFeatures() 
 		throws IOException 
 	{
 		if (fcn == null)
 			throw new NullPointerException("[FSFCN error, selectFeatures], feature correlation network == null");
 		
-		File f = new File(FCN_FILENAME);
-		if (f.exists()) {
-			boolean deleted = f.delete();
-			if (!deleted) {
-				String msg = "[FSFCN error, select features], unable to delete " + f.getAbsolutePath();
-				throw new IOException(msg);
-			}
-		}
-		
-		fcn.save(FCN_FILENAME);
+		graph = fcn.toCSR();
+		partition = clusterer.cluster(graph);
 		
-		boolean ok = invokePythonScript();
-		if (!ok) throw new IOException("Invoke python script error");
-		
-		wt = processOutFile(WT_OUT);
-		fg = processOutFile(FG_OUT);
-		lv = processOutFile(LV_OUT);
-		im = processOutFile(IM_OUT);
+		wt = selectClusterDriven(partition[Clusterer.WT]);
+		fg = selectClusterDriven(partition[Clusterer.FG]);
+		lv = selectClusterDriven(partition[Clusterer.LV]);
+		im = selectClusterDriven(partition[Clusterer.IM]);
 	}
 	
-	private boolean invokePythonScript() {
-		Runtime rt = Runtime.getRuntime();
-		try {
-			Process p = rt.exec("python clusterer.py");
-			int status = p.waitFor();
-			if (status != 0) {
-				System.out.println("[FSFCN, invoke python script error] process staus != ok] status = " + status);
-				return false;
-			}
-			
-			InputStream is = p.getInputStream();
-			InputStreamReader isr = new InputStreamReader(is);
-			BufferedReader br = new BufferedReader(isr);
-			String scriptOut = br.readLine();
-			if (!scriptOut.equals("OK")) {
-				System.out.println("[FSFCN, invoke python script error] script output != ok]");
-				return false;
+	/**
+	 * Cluster-driven feature selection: the most relevant feature in a cluster is selected,
+	 * the feature and its neighbours are removed from the cluster, and the procedure is 
+	 * repeated until the cluster becomes empty
+	 */
+	private int[] selectClusterDriven(Partition p) {
+		int n = graph.numNodes();
+		
+		// nodes grouped by clusters, sorted by relevance within each cluster
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				int c1 = p.cluster(o1), c2 = p.cluster(o2);
+				if (c1 != c2)
+					return c1 < c2 ? -1 : 1;
+				return Double.compare(graph.node(o2).getClassCorrelation(), graph.node(o1).getClassCorrelation());
 			}
-		} catch (IOException ioe) {
-			System.out.println("[FSFCN, invoke python script error, IOException]" + ioe.getMessage());
-			return false;
-		} catch (InterruptedException ie) {
-			System.out.println("[FSFCN, invoke python script error, InterruptedException]" + ie.getMessage());
-			return false;
-		}
+		});
 		
-		return true;
-	}
-	
-	private int[] processOutFile(String fileName) 
-		throws IOException
-	{
+		boolean[] removed = new boolean[n];
 		ArrayList<Integer> features = new ArrayList<Integer>();
-		
-		BufferedReader br = new BufferedReader(new FileReader(fileName));
-		String line = null;
-		while ((line = br.readLine()) != null) {
-			String[] toks = line.split(",");
-			if (toks.length != 2) {
-				br.close();
-				throw new IOException("[FSFCN, script output file format error] " + fileName + ", " + line);
-			}
+		for (int k = 0; k < n; k++) {
+			int i = order[k];
+			if (removed[i])
+				continue;
 			
-			int feature = -1;
-			try {
-				feature = Integer.parseInt(toks[0]);
-			} catch (NumberFormatException nfe) {
-				br.close();
-				throw new IOException("[FSFCN, script output file format error] " + fileName + ", " + line);
+			features.add(graph.node(i).getId() + 1);   // class attribute has index 0
+			removed[i] = true;
+			for (int e = graph.begin(i); e < graph.end(i); e++) {
+				int j = graph.target(e);
+				if (p.cluster(j) == p.cluster(i))
+					removed[j] = true;
 			}
-			
-			feature = feature + 1;    // class attribute has index 0
-			
-			features.add(feature);
 		}
 		
 		// add class attribute to selected attributes
@@ -159,8 +119,6 @@ public class FSFCN {
 		int[] fsRes = new int[features.size()];
 		for (int i = 0; i < features.size(); i++)
 			fsRes[i] = features.get(i);
-				
-		br.close();
 		
 		return fsRes;
 	}
@@ -227,184 +185,112 @@ public class FSFCN {
 		}
 	}
 	
-	public ClusteringQuality wtQuality() 
-		throws IOException
-	{
-		return determineClusteringQuality(WT_INF);
+	public ClusteringQuality wtQuality() {
+		return determineClusteringQuality(partition[Clusterer.WT]);
 	}
 	
-	public ClusteringQuality fgQuality() 
-		throws IOException
-	{
-		return determineClusteringQuality(FG_INF);
+	public ClusteringQuality fgQuality() {
+		return determineClusteringQuality(partition[Clusterer.FG]);
 	}
 	
-	public ClusteringQuality lvQuality() 
-		throws IOException
-	{
-		return determineClusteringQuality(LV_INF);
+	public ClusteringQuality lvQuality() {
+		return determineClusteringQuality(partition[Clusterer.LV]);
 	}
 	
-	public ClusteringQuality imQuality() 
-		throws IOException
-	{
-		return determineClusteringQuality(IM_INF);
+	public ClusteringQuality imQuality() {
+		return determineClusteringQuality(partition[Clusterer.IM]);
 	}
 	
-	private ClusteringQuality determineClusteringQuality(String fileName) 
-		throws IOException
-	{
+	private ClusteringQuality determineClusteringQuality(Partition p) {
 		ClusteringQuality cq = new ClusteringQuality();
-		
-		HashMap<String, String> clusterMap = new HashMap<String, String>();
-		BufferedReader br = new BufferedReader(new FileReader(fileName));
-		
-		HashMap<String, ArrayList<Attribute>> clusters = 
-			new HashMap<String, ArrayList<Attribute>>();
-		
-		String line = null;
-		
-		cq.q = Double.parseDouble(br.readLine());
-		cq.numClusters = Integer.parseInt(br.readLine());
-		
+		cq.q = p.modularity();
+		cq.numClusters = p.numClusters();
 		cq.intraClusterLinksW = 0;
 		cq.interClusterLinksW = 0;
 		
-		while ((line = br.readLine()) != null) {
-			String[] toks = line.split(",");
-			if (toks.length != 3) {
-				br.close();
-				throw new IOException("[ERR, script output file format error] " + fileName + ", " + line);
-			}
-				
-			String fName = toks[1];
-			String cl = toks[2];
-			clusterMap.put(fName, cl);
-		}
-		br.close();
+		double[] intra = new double[graph.numEdges()];
+		double[] inter = new double[graph.numEdges()];
+		for (int i = 0; i < graph.numNodes(); i++) {
+			for (int k = graph.begin(i); k < graph.end(i); k++) {
+				int j = graph.target(k);
+				if (j < i)
+					continue;
 				
-		UndirectedSparseGraph<Attribute, AttributePair> g = fcn.getGraph();
-		Iterator<Attribute> ait = g.getVertices().iterator();
-		while (ait.hasNext()) {
-			Attribute a = ait.next();
-			String aName = a.getName();
-			String clusterId = clusterMap.get(aName);
-			ArrayList<Attribute> cluster = clusters.get(clusterId);
-			if (cluster == null) {
-				cluster = new ArrayList<Attribute>();
-				clusters.put(clusterId, cluster);
-			} 
-			cluster.add(a);
-		} 
-		
-		DescriptiveStatistics intrads = new DescriptiveStatistics();
-		DescriptiveStatistics interds = new DescriptiveStatistics();
-		
-		Iterator<AttributePair> it = g.getEdges().iterator();
-		while (it.hasNext()) {
-			AttributePair ap = it.next();
-			double w = ap.getR();
-			String atr1Name = ap.getAtr1().getName();
-			String atr2Name = ap.getAtr2().getName();
-			String atr1cl = clusterMap.get(atr1Name);
-			String atr2cl = clusterMap.get(atr2Name);
-				
-			if (atr1cl.equals(atr2cl)) { 
-				cq.intraClusterLinksW += Math.abs(w);
-				cq.intraClusterLinks++;
-				intrads.addValue(Math.abs(w));
-			} else {
-				cq.interClusterLinksW += Math.abs(w);
-				cq.interClusterLinks++;
-				interds.addValue(Math.abs(w));
+				double w = graph.weight(k);
+				if (p.cluster(i) == p.cluster(j)) { 
+					cq.intraClusterLinksW += w;
+					intra[cq.intraClusterLinks++] = w;
+				} else {
+					cq.interClusterLinksW += w;
+					inter[cq.interClusterLinks++] = w;
+				}
 			}
 		}
 		
-		compareWeights(intrads, interds, cq);
-		examineClusters(g, clusters, clusterMap, cq);
+		compareWeights(Arrays.copyOf(intra, cq.intraClusterLinks), Arrays.copyOf(inter, cq.interClusterLinks), cq);
+		examineClusters(p, cq);
 		return cq;
 	}
 	
-	private void compareWeights(DescriptiveStatistics intrads, DescriptiveStatistics interds, ClusteringQuality cq) {
-		double[] intra = intrads.getValues();
-		double[] inter = interds.getValues();
-		
-		int psCount = 0;
-		for (int i = 0; i < intra.length; i++)
-			for (int j = 0; j < inter.length; j++)
-				if (intra[i] >= inter[j])
-					psCount++;
-		
-		cq.ps = (double) psCount / (double) (intra.length * inter.length);
+	/**
+	 * Probability that an intra-cluster link is at least as strong as an inter-cluster link
+	 * and the significance of the difference (Mann-Whitney U test), from one merge of the 
+	 * sorted weights
+	 */
+	private void compareWeights(double[] intra, double[] inter, ClusteringQuality cq) {
+		MannWhitney mw = new MannWhitney(intra, inter);
+		cq.ps = mw.probabilityOfSuperiority();
 		
 		if (intra.length < 2 || inter.length < 2) {
 			cq.sdif = false;
 			return;
 		}
 			
-		MannWhitneyTest mwu = new MannWhitneyTest(intra, inter);
-		double sp = mwu.getSP();
+		double sp = mw.getSP();
 		cq.sdif = sp < 0.05;
 	}
 	
-	private void examineClusters(
-		UndirectedSparseGraph<Attribute, AttributePair> g, 
-		HashMap<String, ArrayList<Attribute>> clusters, 
-		HashMap<String, String> clusterMap,
-		ClusteringQuality cq
-	) 
-	{
-		cq.numRS = 0;
-		cq.numRW = 0;
-		
-		int maxSize = 0;
+	/**
+	 * Counts clusters that are communities in the weak sense (intra-cluster weight exceeds 
+	 * inter-cluster weight) and in the strong sense (this holds for every node in the cluster)
+	 */
+	private void examineClusters(Partition p, ClusteringQuality cq) {
+		int numC = p.numClusters();
+		double[] totalIntraWeight = new double[numC];
+		double[] totalInterWeight = new double[numC];
+		boolean[] rs = new boolean[numC];
+		int[] size = new int[numC];
+		Arrays.fill(rs, true);
 		
-		Iterator<Entry<String, ArrayList<Attribute>>> it = clusters.entrySet().iterator();
-		while (it.hasNext()) {
-			Entry<String, ArrayList<Attribute>> entry = it.next();
-			ArrayList<Attribute> cl = entry.getValue();
-			
-			double totalIntraWeight = 0.0;
-			double totalInterWeight = 0.0;
-	
-			boolean rs = true;
-			if (cl.size() > maxSize)
-				maxSize = cl.size();
+		for (int i = 0; i < graph.numNodes(); i++) {
+			int c = p.cluster(i);
+			size[c]++;
 			
-			for (int i = 0; i < cl.size(); i++) {
-				Attribute node = cl.get(i);
-				String nodeCLID = clusterMap.get(node.getName());
-				Iterator<Attribute> neiit = g.getNeighbors(node).iterator();
-				
-				double localIntraW = 0.0;
-				double localInterW = 0.0;
-				
-				while (neiit.hasNext()) {
-					Attribute nei = neiit.next();
-					String neiCLID = clusterMap.get(nei.getName());
-					AttributePair link = g.findEdge(node,  nei);
-					
-					if (nodeCLID.equals(neiCLID)) {
-						// same cluster
-						totalIntraWeight += Math.abs(link.getR());
-						localIntraW += Math.abs(link.getR());
-					} else {
-						// different clusters
-						totalInterWeight += Math.abs(link.getR());
-						localInterW += Math.abs(link.getR());
-					}
-				}
-				
-				if (localInterW > localIntraW)
-					rs = false;
+			double localIntraW = 0.0;
+			double localInterW = 0.0;
+			for (int k = graph.begin(i); k < graph.end(i); k++) {
+				if (p.cluster(graph.target(k)) == c)
+					localIntraW += graph.weight(k);
+				else
+					localInterW += graph.weight(k);
 			}
 			
-			boolean rw = totalIntraWeight > totalInterWeight;
-			
-			if (rw) cq.numRW++;
-			if (rs) cq.numRS++;
+			totalIntraWeight[c] += localIntraW;
+			totalInterWeight[c] += localInterW;
+			if (localInterW > localIntraW)
+				rs[c] = false;
+		}
+		
+		cq.numRS = 0;
+		cq.numRW = 0;
+		int maxSize = 0;
+		for (int c = 0; c < numC; c++) {
+			if (totalIntraWeight[c] > totalInterWeight[c]) cq.numRW++;
+			if (rs[c]) cq.numRS++;
+			if (size[c] > maxSize)
+				maxSize = size[c];
 		}
 		
-		cq.largest = (double) maxSize / (double) g.getVertexCount();
+		cq.largest = (double) maxSize / (double) graph.numNodes();
 	}
 }
@@ -0,0 +1,336 @@
+package svc.fsfcn;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Approximate pair order containing only the candidate pairs found by locality-sensitive
+ * hashing (for datasets too wide to correlate all pairs). Normalized rank vectors are
+ * sketched by random hyperplane signatures (SimHash): the bits of two vectors with rank
+ * correlation r agree with probability p = 1 - arccos(r)/pi. Signatures are split into
+ * bands of rows bits, and attributes whose bands agree in at least one band become candidates.
+ * A band and its complement are hashed together, so strongly negatively correlated pairs
+ * collide as well. A pair with |r| = t is found with probability 1 - (1 - p(t)^rows)^bands:
+ * more bands increase recall, more rows per band reduce the number of false candidates.
+ * Candidates are verified exactly (the same correlation as computed by CorrelationEngine)
+ * and sorted by |r|, the order of found pairs is therefore exact, but pairs that were not
+ * found are missing (a network built from this order may stay disconnected if the pairs
+ * connecting it are weaker than the pairs the hashing was tuned for). Constant attributes
+ * (undefined correlation) take no part in pairs.
+ *
+ * Buckets larger than MAX_BUCKET (e.g. many near-duplicate attributes) are split by the bits
+ * of the following bands, so a pair of such a bucket is a candidate only if it also agrees in
+ * those bands. Attributes agreeing in all bands are listed in the order of their indexes and
+ * paired with their MAX_BUCKET - 1 successors only. The number of candidates of a band is
+ * therefore at most MAX_BUCKET / 2 per attribute (instead of quadratic in the bucket size)
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class LshPairOrder implements PairOrder {
+	// attributes sketched by one task
+	private static final int CHUNK = 64;
+
+	// the largest bucket whose attributes are all paired as candidates
+	public static final int MAX_BUCKET = 128;
+
+	// the largest number of distinct candidate pairs
+	private static final int MAX_CANDIDATES = Integer.MAX_VALUE - 8;
+
+	private Attribute[] attribute;    // attributes by their index in the data matrix
+	private int[] first, second;      // attribute indexes of pairs, first < second
+	private double[] r;
+
+	/**
+	 * Candidate pairs of normalized rank vectors z (see CorrelationEngine.normalizedRanks)
+	 * with verified |r| >= minR
+	 */
+	public LshPairOrder(double[][] z, Attribute[] attribute, int bands, int rows, double minR, long seed, ForkJoinPool pool) {
+		if (rows < 1 || rows > 62 || bands < 1)
+			throw new IllegalArgumentException("[LshPairOrder error] invalid bands/rows: " + bands + "/" + rows);
+		this.attribute = attribute;
+
+		boolean[] constant = new boolean[z.length];
+		for (int a = 0; a < z.length; a++)
+			constant[a] = z[a].length == 0 || Double.isNaN(z[a][0]);
+
+		long[][] signature = sketch(z, bands, rows, seed, pool);
+		long[] candidates = candidates(signature, constant, bands, rows);
+		verify(z, candidates, minR, pool);
+	}
+
+	/**
+	 * The number of bands needed to find a pair with correlation |r| with the given probability
+	 */
+	public static int bandsFor(double r, double recall, int rows) {
+		double p = Math.pow(1.0 - Math.acos(Math.abs(r)) / Math.PI, rows);
+		if (p >= 1.0)
+			return 1;
+		return Math.max(1, (int) Math.ceil(Math.log(1.0 - recall) / Math.log(1.0 - p)));
+	}
+
+	/**
+	 * The probability to find a pair with correlation |r|
+	 */
+	public static double recall(double r, int bands, int rows) {
+		double p = Math.pow(1.0 - Math.acos(Math.abs(r)) / Math.PI, rows);
+		return 1.0 - Math.pow(1.0 - p, bands);
+	}
+
+	private static long[][] sketch(double[][] z, int bands, int rows, long seed, ForkJoinPool pool) {
+		int n = z.length == 0 ? 0 : z[0].length;
+		int bits = bands * rows;
+		Random rnd = new Random(seed);
+		double[][] hyperplane = new double[bits][n];
+		for (int b = 0; b < bits; b++)
+			for (int k = 0; k < n; k++)
+				hyperplane[b][k] = rnd.nextGaussian();
+
+		long[][] signature = new long[z.length][bands];
+		pool.invoke(new SketchTask(z, hyperplane, signature, rows, 0, z.length));
+		return signature;
+	}
+
+	private static class SketchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private double[][] z, hyperplane;
+		private long[][] signature;
+		private int rows, from, to;
+
+		SketchTask(double[][] z, double[][] hyperplane, long[][] signature, int rows, int from, int to) {
+			this.z = z;
+			this.hyperplane = hyperplane;
+			this.signature = signature;
+			this.rows = rows;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > CHUNK) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new SketchTask(z, hyperplane, signature, rows, from, mid),
+					new SketchTask(z, hyperplane, signature, rows, mid, to));
+				return;
+			}
+
+			for (int a = from; a < to; a++) {
+				double[] za = z[a];
+				long[] sa = signature[a];
+				for (int b = 0; b < hyperplane.length; b++) {
+					double[] h = hyperplane[b];
+					double s = 0.0;
+					for (int k = 0; k < za.length; k++)
+						s += za[k] * h[k];
+					if (s >= 0.0)
+						sa[b / rows] |= 1L << (b % rows);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Store indexes (see CorrelationStore) of pairs colliding in at least one band, sorted
+	 */
+	private static long[] candidates(long[][] signature, boolean[] constant, int bands, int rows) {
+		int numAttr = 0;
+		for (int a = 0; a < signature.length; a++)
+			if (!constant[a])
+				numAttr++;
+		long mask = (1L << rows) - 1;
+		long[] entry = new long[numAttr];
+		Candidates cand = new Candidates(Math.max(16, numAttr));
+
+		for (int l = 0; l < bands; l++) {
+			// (hash of the canonical band key, attribute), sorted to bring collisions together
+			int e0 = 0;
+			for (int a = 0; a < signature.length; a++) {
+				if (constant[a])
+					continue;
+				long key = signature[a][l];
+				key = Math.min(key, key ^ mask);
+				entry[e0++] = (mix(key + l) & 0xFFFFFFFF00000000L) | a;
+			}
+			Arrays.sort(entry);
+			buckets(entry, 0, numAttr, signature, l, 1, bands, mask, cand);
+		}
+
+		return cand.toArray();
+	}
+
+	/**
+	 * Adds the pairs of the buckets of sorted entries from..to-1 (bucketed by band l), buckets 
+	 * larger than MAX_BUCKET are split by the bits of band l + depth (complemented as band l)
+	 */
+	private static void buckets(long[] entry, int from, int to, long[][] signature, int l, int depth, int bands,
+		long mask, Candidates cand)
+	{
+		int start = from;
+		for (int e = from + 1; e <= to; e++) {
+			if (e < to && (entry[e] >>> 32) == (entry[start] >>> 32))
+				continue;
+
+			if (e - start <= MAX_BUCKET) {
+				for (int x = start; x < e; x++)
+					for (int y = x + 1; y < e; y++)
+						cand.add(CorrelationStore.index((int) entry[x], (int) entry[y]));
+			} else if (depth < bands) {
+				int l2 = (l + depth) % bands;
+				long[] sub = new long[e - start];
+				for (int x = start; x < e; x++) {
+					int a = (int) entry[x];
+					long key = signature[a][l2];
+					if ((signature[a][l] ^ mask) < signature[a][l])
+						key ^= mask;
+					sub[x - start] = (mix(key + l2) & 0xFFFFFFFF00000000L) | a;
+				}
+				Arrays.sort(sub);
+				buckets(sub, 0, sub.length, signature, l, depth + 1, bands, mask, cand);
+			} else {
+				// agreeing in all bands: attributes by index, paired with their successors
+				long[] sub = new long[e - start];
+				for (int x = start; x < e; x++)
+					sub[x - start] = entry[x] & 0xFFFFFFFFL;
+				Arrays.sort(sub);
+				for (int x = 0; x < sub.length; x++)
+					for (int y = x + 1; y < Math.min(sub.length, x + MAX_BUCKET); y++)
+						cand.add(CorrelationStore.index((int) sub[x], (int) sub[y]));
+			}
+			start = e;
+		}
+	}
+
+	/**
+	 * Distinct store indexes of candidate pairs, duplicates are removed when the array is full
+	 */
+	private static class Candidates {
+		private long[] a;
+		private int n;
+
+		Candidates(int capacity) {
+			a = new long[capacity];
+		}
+
+		void add(long index) {
+			if (n == a.length) {
+				n = unique(a, n);
+				if (n > a.length / 2 && a.length < MAX_CANDIDATES)
+					a = Arrays.copyOf(a, (int) Math.min(2L * a.length, MAX_CANDIDATES));
+				else if (n == a.length)
+					throw new IllegalStateException("[LshPairOrder error] more than " + MAX_CANDIDATES
+						+ " candidate pairs, increase " + Dataset.LSH_ROWS_PROPERTY);
+			}
+			a[n++] = index;
+		}
+
+		long[] toArray() {
+			n = unique(a, n);
+			return Arrays.copyOf(a, n);
+		}
+	}
+
+	private static int unique(long[] a, int len) {
+		Arrays.sort(a, 0, len);
+		int m = 0;
+		for (int i = 0; i < len; i++)
+			if (m == 0 || a[i] != a[m - 1])
+				a[m++] = a[i];
+		return m;
+	}
+
+	private static long mix(long x) {
+		x += 0x9E3779B97F4A7C15L;
+		x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+		x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+		return x ^ (x >>> 31);
+	}
+
+	private void verify(double[][] z, long[] cand, double minR, ForkJoinPool pool) {
+		double[] cr = new double[cand.length];
+		pool.invoke(new VerifyTask(z, cand, cr, 0, cand.length));
+
+		int m = 0;
+		for (int c = 0; c < cand.length; c++)
+			if (Math.abs(cr[c]) >= minR)
+				m++;
+
+		// candidates are in the store order, the stable sort keeps it for equal |r|
+		int[] idx = new int[m];
+		double[] key = new double[m];
+		m = 0;
+		for (int c = 0; c < cand.length; c++) {
+			if (Math.abs(cr[c]) >= minR) {
+				idx[m] = c;
+				key[m++] = Math.abs(cr[c]);
+			}
+		}
+		SortedPairIndex.mergeSort(key, idx, new double[m], new int[m], 0, m);
+
+		first = new int[m];
+		second = new int[m];
+		r = new double[m];
+		for (int k = 0; k < m; k++) {
+			long s = cand[idx[k]];
+			first[k] = CorrelationStore.first(s);
+			second[k] = CorrelationStore.second(s);
+			r[k] = cr[idx[k]];
+		}
+	}
+
+	private static class VerifyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private double[][] z;
+		private long[] cand;
+		private double[] r;
+		private int from, to;
+
+		VerifyTask(double[][] z, long[] cand, double[] r, int from, int to) {
+			this.z = z;
+			this.cand = cand;
+			this.r = r;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 16 * CHUNK) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new VerifyTask(z, cand, r, from, mid), new VerifyTask(z, cand, r, mid, to));
+				return;
+			}
+
+			for (int c = from; c < to; c++)
+				r[c] = CorrelationEngine.correlation(z[CorrelationStore.first(cand[c])], z[CorrelationStore.second(cand[c])]);
+		}
+	}
+
+	@Override
+	public int size() {
+		return r.length;
+	}
+
+	@Override
+	public AttributePair get(int k) {
+		return new AttributePair(attribute[first[k]], attribute[second[k]], r[k]);
+	}
+
+	@Override
+	public int atr1(int k) {
+		return attribute[first[k]].getId();
+	}
+
+	@Override
+	public int atr2(int k) {
+		return attribute[second[k]].getId();
+	}
+
+	@Override
+	public double r(int k) {
+		return r[k];
+	}
+}
@@ -0,0 +1,123 @@
+package svc.fsfcn;
+
+import java.util.Arrays;
+
+import jsc.distributions.Normal;
+import jsc.independentsamples.MannWhitneyTest;
+
+/**
+ * Comparison of two samples A and B by one merge of the sorted samples (O((n + m) log(n + m))):
+ * the probability of superiority P(a >= b) over all pairs (a, b) and the two-sided significance
+ * of the Mann-Whitney U test.
+ *
+ * The significance follows MannWhitneyTest(a, b).getSP() of jsc: midranks of the combined sample,
+ * U = min(U_A, U_B), and for samples with more than 20 values the normal approximation with the
+ * continuity correction and the tie correction sum(t^3 - t). Smaller samples (the exact distribution,
+ * or a permutation test if there are ties) and samples containing NaN are passed to MannWhitneyTest
+ * itself.
+ *
+ * The number of pairs n * m and the tie correction are computed in long arithmetic, jsc uses int.
+ * The results are the same double as in jsc while these fit in an int, getSP() intentionally differs
+ * from jsc once n * m > Integer.MAX_VALUE or a group of equal values has more than about 1290 values
+ * (jsc overflows there, e.g. U < 0 and SP = 2 for two samples of 50000 values)
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class MannWhitney {
+	// the largest samples tested exactly by jsc
+	private static final int SMALL_SAMPLE_SIZE = 20;
+
+	private double ps;
+	private double u;
+	private double sp = Double.NaN;
+
+	/**
+	 * Compares samples a and b, the significance is computed if both have at least two values
+	 */
+	public MannWhitney(double[] a, double[] b) {
+		int n = a.length, m = b.length;
+		double[] sa = a.clone();
+		double[] sb = b.clone();
+		Arrays.sort(sa);
+		Arrays.sort(sb);
+
+		// NaN values (sorted last) are not >= or <= anything
+		int na = n, nb = m;
+		while (na > 0 && Double.isNaN(sa[na - 1]))
+			na--;
+		while (nb > 0 && Double.isNaN(sb[nb - 1]))
+			nb--;
+
+		// groups of equal values in the merged order
+		long superior = 0;               // pairs with a >= b
+		long tieCorrection = 0;          // sum of t^3 - t over groups of t equal values
+		double rankSumA = 0.0;
+		int i = 0, j = 0, bBefore = 0;
+		while (i < na || j < nb) {
+			double v = j == nb || (i < na && sa[i] <= sb[j]) ? sa[i] : sb[j];
+			int start = i + j;
+			int ga = 0, gb = 0;
+			while (i < na && sa[i] == v) {
+				i++;
+				ga++;
+			}
+			while (j < nb && sb[j] == v) {
+				j++;
+				gb++;
+			}
+
+			superior += (long) ga * (bBefore + gb);
+			bBefore += gb;
+
+			// midrank of the group (ranks from 1), k further values tie with the first one
+			int k = ga + gb - 1;
+			if (k > 0) {
+				tieCorrection += (long) k * (k + 1) * (k + 2);
+			}
+			rankSumA += ga * (start + 0.5 * k + 1);
+		}
+
+		ps = (double) superior / ((double) n * (double) m);
+		if (n < 2 || m < 2)
+			return;
+
+		if (na < n || nb < m || (n <= SMALL_SAMPLE_SIZE && m <= SMALL_SAMPLE_SIZE)) {
+			MannWhitneyTest mwu = new MannWhitneyTest(a, b);
+			u = mwu.getStatistic();
+			sp = mwu.getSP();
+			return;
+		}
+
+		long nab = (long) n * m;
+		double ua = rankSumA - 0.5 * n * (n + 1.0);
+		double ub = nab - ua;
+		u = Math.min(ua, ub);
+
+		double N = n + m;
+		double var = (N * N * N - N - tieCorrection) / 12.0;
+		double d = u - 0.5 * nab;
+		double z = (d - (d < 0 ? -0.5 : 0.5)) / Math.sqrt(nab / (N * (N - 1.0)) * var);
+		sp = 2.0 * Normal.standardTailProb(z, z > 0);
+	}
+
+	/**
+	 * The fraction of pairs (a, b) with a >= b
+	 */
+	public double probabilityOfSuperiority() {
+		return ps;
+	}
+
+	/**
+	 * The U statistic, min(U_A, U_B) (0 if a sample has less than two values)
+	 */
+	public double getStatistic() {
+		return u;
+	}
+
+	/**
+	 * The two-sided significance probability (NaN if a sample has less than two values)
+	 */
+	public double getSP() {
+		return sp;
+	}
+}
@@ -0,0 +1,79 @@
+package svc.fsfcn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fixed-size array of doubles or ints held off-heap in a memory-mapped temporary file.
+ * The file is split into segments of 1 GB (a mapped buffer is limited to 2 GB), the file
+ * is deleted right after mapping (or at exit where open files cannot be deleted) and
+ * its pages are released when the array is garbage collected
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+class MappedArray {
+	private static final int SEGMENT_BYTES_LOG = 30;
+	
+	private ByteBuffer[] segment;
+	private int shift;      // log2 of the number of elements in a segment
+	private int mask;
+	private int elementBytesLog;
+	private long length;
+	
+	/**
+	 * An array of length elements of 8 (double) or 4 (int) bytes
+	 */
+	MappedArray(long length, int elementBytes) 
+		throws IOException 
+	{
+		this.length = length;
+		elementBytesLog = elementBytes == 8 ? 3 : 2;
+		shift = SEGMENT_BYTES_LOG - elementBytesLog;
+		mask = (1 << shift) - 1;
+		
+		long bytes = length << elementBytesLog;
+		int numSegments = (int) ((bytes + (1L << SEGMENT_BYTES_LOG) - 1) >>> SEGMENT_BYTES_LOG);
+		segment = new ByteBuffer[numSegments];
+		
+		Path file = Files.createTempFile("fsfcn", ".mapped");
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			for (int s = 0; s < numSegments; s++) {
+				long pos = (long) s << SEGMENT_BYTES_LOG;
+				long size = Math.min(1L << SEGMENT_BYTES_LOG, bytes - pos);
+				segment[s] = ch.map(FileChannel.MapMode.READ_WRITE, pos, size).order(ByteOrder.nativeOrder());
+			}
+		} finally {
+			try {
+				Files.delete(file);
+			} catch (IOException ioe) {
+				new File(file.toString()).deleteOnExit();
+			}
+		}
+	}
+	
+	long length() {
+		return length;
+	}
+	
+	double getDouble(long i) {
+		return segment[(int) (i >>> shift)].getDouble(((int) i & mask) << 3);
+	}
+	
+	void putDouble(long i, double v) {
+		segment[(int) (i >>> shift)].putDouble(((int) i & mask) << 3, v);
+	}
+	
+	int getInt(long i) {
+		return segment[(int) (i >>> shift)].getInt(((int) i & mask) << 2);
+	}
+	
+	void putInt(long i, int v) {
+		segment[(int) (i >>> shift)].putInt(((int) i & mask) << 2, v);
+	}
+}
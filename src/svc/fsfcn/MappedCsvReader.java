@@ -0,0 +1,346 @@
+package svc.fsfcn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads a CSV data matrix (header: class column name, attribute names; lines: class label,
+ * attribute values) into a DataMatrix. The file is memory-mapped in line-aligned chunks:
+ * the lines of all chunks are counted in parallel (a plain byte scan), which gives the
+ * first instance of every chunk, and then the chunks are parsed in parallel straight into
+ * the columns of the matrix.
+ *
+ * Lines are read as by BufferedReader.readLine() and split as by String.split(","), i.e.
+ * trailing empty fields are ignored, a line with a different number of fields causes
+ * an IOException with the given message and a malformed value the NumberFormatException
+ * of Double.parseDouble. When several chunks are malformed the error of the first one
+ * in the file is reported
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class MappedCsvReader {
+	private static final long MIN_CHUNK = 1L << 20;
+	private static final long MAX_CHUNK = 1L << 28;
+	private static final int SCAN_BUFFER = 1 << 16;
+	private static final int BLOCK = 1 << 20;
+
+	private String file;
+	private String formatError;
+	private Charset charset = Charset.defaultCharset();
+	private ForkJoinPool pool;
+
+	private String[] header;
+	private String[] classes;
+	private DataMatrix data;
+
+	public MappedCsvReader(String file, String formatError) {
+		this(file, formatError, ForkJoinPool.commonPool());
+	}
+
+	public MappedCsvReader(String file, String formatError, ForkJoinPool pool) {
+		this.file = file;
+		this.formatError = formatError;
+		this.pool = pool;
+	}
+
+	/**
+	 * Fields of the header line
+	 */
+	public String[] header() {
+		return header;
+	}
+
+	/**
+	 * Class labels of instances
+	 */
+	public String[] classes() {
+		return classes;
+	}
+
+	public DataMatrix data() {
+		return data;
+	}
+
+	public void read()
+		throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+
+			// header
+			if (size == 0)
+				throw new IOException(formatError);
+			ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+			ByteBuffer buf = ByteBuffer.allocate(SCAN_BUFFER);
+			long pos = 0;
+			int terminator = -1;
+			while (terminator < 0 && pos < size) {
+				buf.clear();
+				int n = channel.read(buf, pos);
+				if (n <= 0)
+					break;
+				int k = 0;
+				while (k < n && buf.get(k) != '\n' && buf.get(k) != '\r')
+					k++;
+				headerBytes.write(buf.array(), 0, k);
+				if (k < n)
+					terminator = buf.get(k++);
+				pos += k;
+			}
+			if (terminator == '\r' && pos < size && readByte(channel, pos) == '\n')
+				pos++;
+			header = new String(headerBytes.toByteArray(), charset).split(",");
+			int numAttr = header.length - 1;
+
+			// line-aligned chunks
+			long chunkSize = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, (size - pos) / (4L * pool.getParallelism()) + 1));
+			ArrayList<Long> bounds = new ArrayList<Long>();
+			bounds.add(pos);
+			for (long b = nextLine(channel, pos + chunkSize, size); b < size; b = nextLine(channel, b + chunkSize, size))
+				bounds.add(b);
+			bounds.add(size);
+
+			Chunk[] chunks = new Chunk[bounds.size() - 1];
+			for (int c = 0; c < chunks.length; c++)
+				chunks[c] = new Chunk(channel, bounds.get(c), bounds.get(c + 1), c == chunks.length - 1, numAttr);
+
+			// count lines, then parse
+			runAll(chunks);
+			int numInst = 0;
+			for (Chunk c : chunks) {
+				c.firstInst = numInst;
+				if (numInst + (long) c.numLines > Integer.MAX_VALUE)
+					throw new IOException(formatError);
+				numInst += c.numLines;
+			}
+
+			data = new DataMatrix(numInst, numAttr);
+			classes = new String[numInst];
+			for (Chunk c : chunks)
+				c.parse = true;
+			runAll(chunks);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void runAll(Chunk[] chunks)
+		throws IOException
+	{
+		ArrayList<Chunk> tasks = new ArrayList<Chunk>();
+		for (Chunk c : chunks) {
+			c.reinitialize();
+			tasks.add(c);
+		}
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+
+		for (Chunk c : chunks) {
+			if (c.error instanceof IOException)
+				throw (IOException) c.error;
+			if (c.error instanceof RuntimeException)
+				throw (RuntimeException) c.error;
+			if (c.error != null)
+				throw new IOException(formatError, c.error);
+		}
+	}
+
+	private static int readByte(FileChannel channel, long pos)
+		throws IOException
+	{
+		ByteBuffer b = ByteBuffer.allocate(1);
+		if (channel.read(b, pos) < 1)
+			throw new IOException("IOERR [class: MappedCsvReader, unexpected end of file]");
+		return b.get(0);
+	}
+
+	/**
+	 * The position after the first '\n' at or after pos (size if there is none)
+	 */
+	private static long nextLine(FileChannel channel, long pos, long size)
+		throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(SCAN_BUFFER);
+		while (pos < size) {
+			buf.clear();
+			int n = channel.read(buf, pos);
+			if (n <= 0)
+				break;
+			for (int k = 0; k < n; k++)
+				if (buf.get(k) == '\n')
+					return pos + k + 1;
+			pos += n;
+		}
+		return size;
+	}
+
+	/**
+	 * Lines of the file from start (the beginning of a line) to end (after '\n' or the end of the file)
+	 */
+	private class Chunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private FileChannel channel;
+		private long start, end;
+		private boolean lastChunk;
+		private int numAttr;
+
+		boolean parse;
+		int numLines, firstInst;
+		Throwable error;
+
+		Chunk(FileChannel channel, long start, long end, boolean lastChunk, int numAttr) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.lastChunk = lastChunk;
+			this.numAttr = numAttr;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+				if (parse)
+					parse(b);
+				else
+					count(b);
+			} catch (Throwable t) {
+				error = t;
+			}
+		}
+
+		private void count(ByteBuffer b) {
+			byte[] block = new byte[BLOCK];
+			int n = b.limit(), lines = 0;
+			boolean cr = false;
+			for (int from = 0; from < n; from += BLOCK) {
+				int length = Math.min(BLOCK, n - from);
+				b.position(from);
+				b.get(block, 0, length);
+				for (int k = 0; k < length; k++) {
+					byte c = block[k];
+					if (c == '\n') {
+						if (!cr)
+							lines++;
+					} else if (c == '\r')
+						lines++;
+					cr = c == '\r';
+				}
+			}
+			// an unterminated last line
+			if (lastChunk && n > 0 && b.get(n - 1) != '\n' && b.get(n - 1) != '\r')
+				lines++;
+			numLines = lines;
+		}
+
+		private void parse(ByteBuffer b)
+			throws IOException
+		{
+			DoubleParser parser = new DoubleParser(charset);
+			int n = b.limit();
+			int inst = firstInst;
+
+			// lines are parsed from a block of bytes copied from the mapping (grown for long lines)
+			byte[] block = new byte[BLOCK];
+			int blockStart = 0, blockEnd = 0, read = 0;
+			boolean skipLF = false;
+			while (blockStart < blockEnd || read < n) {
+				int lineEnd = blockStart;
+				while (lineEnd < blockEnd && block[lineEnd] != '\n' && block[lineEnd] != '\r')
+					lineEnd++;
+
+				if (lineEnd == blockEnd && read < n) {
+					// the line continues after the block: keep its beginning and read more
+					int kept = blockEnd - blockStart;
+					if (kept > block.length / 2)
+						block = Arrays.copyOf(block, 2 * block.length);
+					System.arraycopy(block, blockStart, block, 0, kept);
+					int length = Math.min(block.length - kept, n - read);
+					b.position(read);
+					b.get(block, kept, length);
+					read += length;
+					blockStart = 0;
+					blockEnd = kept + length;
+					if (skipLF && blockStart < blockEnd && block[blockStart] == '\n')
+						blockStart++;
+					skipLF = false;
+					continue;
+				}
+
+				parseLine(parser, block, blockStart, lineEnd, inst++);
+
+				// "\r\n" is one terminator
+				if (lineEnd < blockEnd && block[lineEnd] == '\r') {
+					if (lineEnd + 1 < blockEnd) {
+						if (block[lineEnd + 1] == '\n')
+							lineEnd++;
+					} else
+						skipLF = true;
+				}
+				blockStart = lineEnd + 1;
+			}
+		}
+
+		/**
+		 * Parses one line (fields as by String.split(","), trailing empty fields are dropped)
+		 */
+		private void parseLine(DoubleParser parser, byte[] b, int from, int to, int inst)
+			throws IOException
+		{
+			double[] values = data.values();
+			int numInst = data.numInst();
+			int numFields = 0, field = 0, fieldStart = from;
+			boolean comma = false;
+			RuntimeException malformed = null;
+			String label = null;
+
+			for (int k = from; k <= to; k++) {
+				if (k < to && b[k] != ',')
+					continue;
+				if (k < to)
+					comma = true;
+				if (k > fieldStart)
+					numFields = field + 1;
+
+				if (field == 0)
+					label = parser.string(b, fieldStart, k);
+				else if (field <= numAttr && malformed == null) {
+					try {
+						values[(field - 1) * numInst + inst] = parser.parse(b, fieldStart, k);
+					} catch (NumberFormatException nfe) {
+						// reported only if the line has the right number of fields
+						malformed = nfe;
+					}
+				}
+				field++;
+				fieldStart = k + 1;
+			}
+			if (!comma)
+				numFields = 1;
+
+			if (numFields != numAttr + 1)
+				throw new IOException(formatError);
+			if (malformed != null)
+				throw malformed;
+			classes[inst] = label;
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package svc.fsfcn;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import JavaMI.Entropy;
+import JavaMI.MutualInformation;
+
+/**
+ * Mutual information between attributes and the class (for any number of classes).
+ * Class labels are encoded once as int codes, every attribute is discretised as in JavaMI
+ * (value floored to int, minus the minimum) and its joint histogram with the class is
+ * counted in primitive arrays. Attributes are processed in parallel on a fork-join pool.
+ *
+ * The terms of the joint distribution are summed in a fixed order (joint cells in the order
+ * of their first occurrence), so the result agrees with
+ * MutualInformation.calculateMutualInformation(column, codes) up to the order of summation,
+ * within TOLERANCE (JavaMI sums in the iteration order of its hash maps). The engine is
+ * compared with JavaMI on fixed columns when the class is loaded, if they disagree (e.g. a
+ * different discretisation in another JavaMI version) all columns are passed to JavaMI
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class MutualInformationEngine {
+	// attributes processed sequentially by one task
+	private static final int MIN_TASK_ATTRS = 16;
+
+	// the largest difference from JavaMI (relative, or absolute in bits for MI below 1)
+	public static final double TOLERANCE = 1e-12;
+
+	// whether the engine agrees with JavaMI on the fixed columns of selfCheck()
+	private static final boolean AGREES_WITH_JAVAMI = selfCheck();
+
+	private ForkJoinPool pool;
+
+	public MutualInformationEngine() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public MutualInformationEngine(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Whether mutual information is computed by JavaMI (the engine disagrees with it)
+	 */
+	public static boolean usesJavaMI() {
+		return !AGREES_WITH_JAVAMI;
+	}
+
+	/**
+	 * Class labels encoded as codes 0, 1, ..., the label first (if present) gets code 0 and
+	 * other labels get codes in the order of their first appearance
+	 */
+	public static int[] encodeClasses(String[] labels, String first) {
+		HashMap<String, Integer> code = new HashMap<String, Integer>();
+		for (String l : labels) {
+			if (l.equals(first)) {
+				code.put(l, 0);
+				break;
+			}
+		}
+
+		int[] c = new int[labels.length];
+		for (int i = 0; i < labels.length; i++) {
+			Integer k = code.get(labels[i]);
+			if (k == null) {
+				k = code.size();
+				code.put(labels[i], k);
+			}
+			c[i] = k;
+		}
+		return c;
+	}
+
+	/**
+	 * Mutual information between each column of a data matrix and the class
+	 */
+	public double[] mutualInformation(DataMatrix data, int[] classes) {
+		double[] mi = new double[data.numAttr()];
+		MITask root = new MITask(data, classes, mi, 0, data.numAttr());
+		if (data.numAttr() <= MIN_TASK_ATTRS)
+			root.compute();
+		else
+			pool.invoke(root);
+		return mi;
+	}
+
+	/**
+	 * Mutual information between a column and the class
+	 */
+	public double mutualInformation(double[] column, int[] classes) {
+		if (!AGREES_WITH_JAVAMI)
+			return javaMI(column, 0, column.length, classes);
+		return new Histogram(column.length, numClasses(classes)).mutualInformation(column, 0, classes);
+	}
+
+	/**
+	 * Compares the engine with JavaMI on fixed columns (binary and three classes, negative and
+	 * fractional values, bins shared by classes)
+	 */
+	private static boolean selfCheck() {
+		int n = 240;
+		double[] column = new double[n];
+		int[] binary = new int[n], three = new int[n];
+		for (int i = 0; i < n; i++) {
+			column[i] = (i * 37 % 23) / 3.0 - 2.5;
+			binary[i] = i * 37 % 23 < 9 ? (i % 5 == 0 ? 1 : 0) : (i % 4 == 0 ? 0 : 1);
+			three[i] = (i * 7 % 11) % 3;
+		}
+
+		for (int[] classes : new int[][] { binary, three }) {
+			double engine = new Histogram(n, numClasses(classes)).mutualInformation(column, 0, classes);
+			double javaMI = javaMI(column, 0, n, classes);
+			if (!(Math.abs(engine - javaMI) <= TOLERANCE * Math.max(1.0, Math.abs(javaMI)))) {
+				System.out.println("[MutualInformationEngine warning] MI " + engine + " differs from JavaMI " + javaMI
+					+ ", JavaMI is used");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static double javaMI(double[] values, int offset, int n, int[] classes) {
+		double[] sv = new double[n];
+		for (int i = 0; i < n; i++)
+			sv[i] = classes[i];
+		return MutualInformation.calculateMutualInformation(Arrays.copyOfRange(values, offset, offset + n), sv);
+	}
+
+	private static int numClasses(int[] classes) {
+		int k = 0;
+		for (int c : classes)
+			k = Math.max(k, c + 1);
+		return k;
+	}
+
+	private static class MITask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private DataMatrix data;
+		private int[] classes;
+		private double[] mi;
+		private int from, to;
+
+		MITask(DataMatrix data, int[] classes, double[] mi, int from, int to) {
+			this.data = data;
+			this.classes = classes;
+			this.mi = mi;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > MIN_TASK_ATTRS) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new MITask(data, classes, mi, from, mid),
+					new MITask(data, classes, mi, mid, to));
+				return;
+			}
+
+			if (!AGREES_WITH_JAVAMI) {
+				for (int a = from; a < to; a++)
+					mi[a] = javaMI(data.values(), data.offset(a), data.numInst(), classes);
+				return;
+			}
+
+			Histogram h = new Histogram(data.numInst(), numClasses(classes));
+			for (int a = from; a < to; a++)
+				mi[a] = h.mutualInformation(data.values(), data.offset(a), classes);
+		}
+	}
+
+	/**
+	 * Workspace for the joint histogram of one column at a time
+	 */
+	private static class Histogram {
+		private int n, numClasses;
+		private int[] bin;                  // bin of an instance (JavaMI discretisation)
+		private int[] dense;                // bin renumbered to 0, 1, ..., numBins - 1
+		private int[] binValue;             // bin of a dense index
+		private int[] remap = new int[0];   // dense index of a bin (bins in a small range)
+		private int[] binCount, classCount;
+		private int[] jointCount = new int[0];
+		private int[] entry;                // joint cells in the order of first occurrence
+
+		Histogram(int n, int numClasses) {
+			this.n = n;
+			this.numClasses = numClasses;
+			bin = new int[n];
+			dense = new int[n];
+			binValue = new int[n];
+			binCount = new int[n];
+			classCount = new int[numClasses];
+			entry = new int[n];
+		}
+
+		/**
+		 * Mutual information of the column values[offset], ..., values[offset + n - 1]
+		 */
+		double mutualInformation(double[] values, int offset, int[] classes) {
+			int numBins = discretise(values, offset);
+
+			// joint cells (dense bin, class) in the order of first occurrence
+			int numCells = numBins * numClasses;
+			if (jointCount.length < numCells)
+				jointCount = new int[numCells];
+			Arrays.fill(jointCount, 0, numCells, 0);
+			Arrays.fill(binCount, 0, numBins, 0);
+			Arrays.fill(classCount, 0);
+
+			int numEntries = 0;
+			for (int i = 0; i < n; i++) {
+				int cell = dense[i] * numClasses + classes[i];
+				if (jointCount[cell]++ == 0)
+					entry[numEntries++] = cell;
+				binCount[dense[i]]++;
+				classCount[classes[i]]++;
+			}
+
+			double mi = 0.0;
+			double total = n;
+			for (int k = 0; k < numEntries; k++) {
+				int cell = entry[k];
+				double joint = jointCount[cell] / total;
+				double first = binCount[cell / numClasses] / total;
+				double second = classCount[cell % numClasses] / total;
+				if (joint > 0 && first > 0 && second > 0)
+					mi += joint * Math.log(joint / first / second);
+			}
+
+			return mi / Math.log(Entropy.LOG_BASE);
+		}
+
+		/**
+		 * JavaMI bins (floor, minus the minimum, int arithmetic) renumbered to dense indexes
+		 */
+		private int discretise(double[] values, int offset) {
+			if (n == 0)
+				return 0;
+
+			int min = (int) Math.floor(values[offset]);
+			for (int i = 0; i < n; i++) {
+				bin[i] = (int) Math.floor(values[offset + i]);
+				if (bin[i] < min)
+					min = bin[i];
+			}
+
+			boolean small = true;
+			int range = 4 * n + 64;
+			for (int i = 0; i < n; i++) {
+				bin[i] -= min;
+				if (bin[i] < 0 || bin[i] >= range)
+					small = false;
+			}
+
+			int numBins = 0;
+			if (small) {
+				if (remap.length < range)
+					remap = new int[range];
+				for (int i = 0; i < n; i++)
+					remap[bin[i]] = -1;
+				for (int i = 0; i < n; i++) {
+					if (remap[bin[i]] < 0) {
+						binValue[numBins] = bin[i];
+						remap[bin[i]] = numBins++;
+					}
+					dense[i] = remap[bin[i]];
+				}
+			} else {
+				int[] sorted = Arrays.copyOf(bin, n);
+				Arrays.sort(sorted);
+				for (int i = 0; i < n; i++)
+					if (i == 0 || sorted[i] != sorted[i - 1])
+						binValue[numBins++] = sorted[i];
+				for (int i = 0; i < n; i++)
+					dense[i] = Arrays.binarySearch(binValue, 0, numBins, bin[i]);
+			}
+
+			return numBins;
+		}
+	}
+}
@@ -1,11 +1,9 @@
 package svc.fsfcn;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 
 /**
- * Normal data matrix
+ * Normal data matrix (instances in lines, read by MappedCsvReader)
  * 
  * @author svc (svc@dmi.uns.ac.rs)
  */
@@ -21,45 +19,19 @@ public class NDataset extends Dataset {
 	public void load() 
 		throws IOException
 	{
-		BufferedReader br = new BufferedReader(new FileReader(inputFile));
-		br.readLine();
-		while (br.readLine() != null)
-			super.numInst++;
-		br.close();
-			
-		br = new BufferedReader(new FileReader(inputFile));
-			
+		MappedCsvReader reader = new MappedCsvReader(inputFile, "IOERR [class: NDataSet, constructor]");
+		reader.read();
+		
 		// parse header
-		String header = br.readLine();
-		String[] hToks = header.split(",");
+		String[] hToks = reader.header();
 		super.numAttr = hToks.length - 1;
 		super.attribute = new Attribute[super.numAttr];
 		for (int i = 1; i < hToks.length; i++) {
 			super.attribute[i - 1] = new Attribute(i - 1, hToks[i]);
 		}
 		
-		// initialize data matrix
-		super.data = new double[numInst][numAttr];
-		super.classAttr = new String[numInst];
-		
-		// read instances
-		String line = null;
-		int noInst = 0;
-		while ((line = br.readLine()) != null) {
-			String[] tok = line.split(",");
-			if (tok.length != super.numAttr + 1) {
-				br.close();
-				throw new IOException("IOERR [class: NDataSet, constructor]");
-			}
-			
-			super.classAttr[noInst] = tok[0];
-			for (int i = 1; i < tok.length; i++) {
-				super.data[noInst][i - 1] = Double.parseDouble(tok[i]);
-			}
-			
-			++noInst;
-		}
-		
-		br.close();
+		super.data = reader.data();
+		super.classAttr = reader.classes();
+		super.numInst = classAttr.length;
 	}
 }
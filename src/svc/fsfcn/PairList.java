@@ -0,0 +1,45 @@
+package svc.fsfcn;
+
+import java.util.ArrayList;
+
+/**
+ * Pair order backed by a sorted list of pair objects
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class PairList implements PairOrder {
+	private ArrayList<AttributePair> pairs;
+	
+	public PairList(ArrayList<AttributePair> pairs) {
+		this.pairs = pairs;
+	}
+	
+	public ArrayList<AttributePair> getList() {
+		return pairs;
+	}
+	
+	@Override
+	public int size() {
+		return pairs.size();
+	}
+	
+	@Override
+	public AttributePair get(int k) {
+		return pairs.get(k);
+	}
+	
+	@Override
+	public int atr1(int k) {
+		return pairs.get(k).getAtr1().getId();
+	}
+	
+	@Override
+	public int atr2(int k) {
+		return pairs.get(k).getAtr2().getId();
+	}
+	
+	@Override
+	public double r(int k) {
+		return pairs.get(k).getR();
+	}
+}
@@ -0,0 +1,26 @@
+package svc.fsfcn;
+
+/**
+ * Attribute pairs in the order of decreasing absolute correlation (pairs with equal 
+ * |r| keep the order in which Dataset enumerates them). Pairs are addressed by their
+ * position in the order, the accessors of ids and correlations do not create objects
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public interface PairOrder {
+	public int size();
+	
+	public AttributePair get(int k);
+	
+	/**
+	 * Id of the first attribute of the k-th pair
+	 */
+	public int atr1(int k);
+	
+	/**
+	 * Id of the second attribute of the k-th pair
+	 */
+	public int atr2(int k);
+	
+	public double r(int k);
+}
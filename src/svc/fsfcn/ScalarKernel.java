@@ -0,0 +1,37 @@
+package svc.fsfcn;
+
+/**
+ * Reference kernel, one pair of columns at a time
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class ScalarKernel implements CorrelationKernel {
+	public static final String NAME = "scalar";
+	
+	@Override
+	public void accumulate(double[][] z, int i0, int i1, int j0, int j1, int k0, int k1, double[] acc, int stride) {
+		accumulate(z, i0, i1, j0, j1, k0, k1, acc, stride, i0, j0);
+	}
+	
+	/**
+	 * Processes the sub-tile [i0, i1) x [j0, j1) of a tile whose first pair is (iOrigin, jOrigin)
+	 */
+	void accumulate(double[][] z, int i0, int i1, int j0, int j1, int k0, int k1, double[] acc, int stride, int iOrigin, int jOrigin) {
+		for (int i = i0; i < i1; i++) {
+			double[] zi = z[i];
+			int base = (i - iOrigin) * stride - jOrigin;
+			for (int j = Math.max(j0, i + 1); j < j1; j++) {
+				double[] zj = z[j];
+				double s = 0.0;
+				for (int k = k0; k < k1; k++)
+					s += zi[k] * zj[k];
+				acc[base + j] += s;
+			}
+		}
+	}
+	
+	@Override
+	public String name() {
+		return NAME;
+	}
+}
@@ -0,0 +1,163 @@
+package svc.fsfcn;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Pair order over a correlation store that is sorted lazily. Pairs are distributed into
+ * buckets by |r| (bucket 0 holds the strongest correlations) by two sequential scans of the
+ * store, and the positions of pairs in the store are kept off-heap. A bucket is sorted the
+ * first time one of its pairs is accessed, so building a connected network, which stops at
+ * the connectivity threshold, only sorts the few buckets of the strongest correlations.
+ * Pairs with undefined (NaN) correlations are placed at the end
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class SortedPairIndex implements PairOrder {
+	private static final int NUM_BUCKETS = 1 << 16;
+	
+	private CorrelationStore store;
+	private Attribute[] attribute;          // attributes by their index in the store
+	private int size;
+	
+	private int[] bucketStart;              // NUM_BUCKETS + 1 buckets (the last one for NaN)
+	private MappedArray order;              // store indexes of pairs, grouped by bucket
+	private AtomicIntegerArray sorted;
+	
+	public SortedPairIndex(CorrelationStore store, Attribute[] attribute) 
+		throws IOException 
+	{
+		if (store.size() > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("[SortedPairIndex error] too many pairs: " + store.size());
+		
+		this.store = store;
+		this.attribute = attribute;
+		this.size = (int) store.size();
+		
+		bucketStart = new int[NUM_BUCKETS + 2];
+		for (int k = 0; k < size; k++)
+			bucketStart[bucket(store.get(k)) + 1]++;
+		for (int b = 0; b <= NUM_BUCKETS; b++)
+			bucketStart[b + 1] += bucketStart[b];
+		
+		// pairs are placed in the store order, i.e. every bucket is sorted by the store index
+		int[] pos = new int[NUM_BUCKETS + 1];
+		System.arraycopy(bucketStart, 0, pos, 0, NUM_BUCKETS + 1);
+		order = new MappedArray(Math.max(size, 1), 4);
+		for (int k = 0; k < size; k++)
+			order.putInt(pos[bucket(store.get(k))]++, k);
+		
+		sorted = new AtomicIntegerArray(NUM_BUCKETS + 1);
+		sorted.set(NUM_BUCKETS, 1);
+	}
+	
+	private static int bucket(double r) {
+		if (Double.isNaN(r))
+			return NUM_BUCKETS;
+		return (int) ((1.0 - Math.min(Math.abs(r), 1.0)) * (NUM_BUCKETS - 1));
+	}
+	
+	/**
+	 * The store index of the k-th pair
+	 */
+	private int storeIndex(int k) {
+		int b = bucketOf(k);
+		if (sorted.get(b) == 0)
+			sortBucket(b);
+		return order.getInt(k);
+	}
+	
+	private int bucketOf(int k) {
+		int low = 0, high = NUM_BUCKETS;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (bucketStart[mid] <= k)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+	
+	/**
+	 * Stable sort of a bucket by decreasing |r| (the bucket is in the store order)
+	 */
+	private synchronized void sortBucket(int b) {
+		if (sorted.get(b) == 1)
+			return;
+		
+		int from = bucketStart[b], len = bucketStart[b + 1] - from;
+		int[] idx = new int[len];
+		double[] key = new double[len];
+		for (int k = 0; k < len; k++) {
+			idx[k] = order.getInt(from + k);
+			key[k] = Math.abs(store.get(idx[k]));
+		}
+		
+		mergeSort(key, idx, new double[len], new int[len], 0, len);
+		for (int k = 0; k < len; k++)
+			order.putInt(from + k, idx[k]);
+		sorted.set(b, 1);
+	}
+	
+	/**
+	 * Stable sort of keys in decreasing order (idx is permuted along with keys)
+	 */
+	static void mergeSort(double[] key, int[] idx, double[] tKey, int[] tIdx, int from, int to) {
+		if (to - from < 2)
+			return;
+		
+		int mid = (from + to) >>> 1;
+		mergeSort(key, idx, tKey, tIdx, from, mid);
+		mergeSort(key, idx, tKey, tIdx, mid, to);
+		if (key[mid - 1] >= key[mid])
+			return;
+		
+		System.arraycopy(key, from, tKey, from, to - from);
+		System.arraycopy(idx, from, tIdx, from, to - from);
+		int i = from, j = mid, k = from;
+		while (i < mid && j < to) {
+			if (tKey[j] > tKey[i]) {
+				key[k] = tKey[j];
+				idx[k++] = tIdx[j++];
+			} else {
+				key[k] = tKey[i];
+				idx[k++] = tIdx[i++];
+			}
+		}
+		while (i < mid) {
+			key[k] = tKey[i];
+			idx[k++] = tIdx[i++];
+		}
+		while (j < to) {
+			key[k] = tKey[j];
+			idx[k++] = tIdx[j++];
+		}
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public AttributePair get(int k) {
+		int s = storeIndex(k);
+		return new AttributePair(attribute[CorrelationStore.first(s)], attribute[CorrelationStore.second(s)], store.get(s));
+	}
+	
+	@Override
+	public int atr1(int k) {
+		return attribute[CorrelationStore.first(storeIndex(k))].getId();
+	}
+	
+	@Override
+	public int atr2(int k) {
+		return attribute[CorrelationStore.second(storeIndex(k))].getId();
+	}
+	
+	@Override
+	public double r(int k) {
+		return store.get(storeIndex(k));
+	}
+}
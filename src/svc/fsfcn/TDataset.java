@@ -3,23 +3,40 @@ package svc.fsfcn;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Transposed data matrix
- * 
+ * Transposed data matrix (attributes in lines). Lines are streamed: the rank vector and
+ * the class mutual information of an attribute are computed on a worker pool while the
+ * following lines are read, and attribute values can be dropped once they are ranked
+ * (the dataset then supports feature selection, but not printData, subset and removeInstances)
+ *
  * @author svc (svc@dmi.uns.ac.rs)
  */
 public class TDataset extends Dataset {
+	// attributes waiting for or being ranked (bounds the memory of parsed but unranked lines)
+	private static final int MAX_PENDING_PER_THREAD = 4;
 
-	public TDataset(String inputFile) 
-		throws IOException 
+	private boolean keepValues;
+
+	public TDataset(String inputFile)
+		throws IOException
 	{
-		super(inputFile);
+		this(inputFile, true);
+	}
+
+	public TDataset(String inputFile, boolean keepValues)
+		throws IOException
+	{
+		this.keepValues = keepValues;
+		read(inputFile);
 	}
 
 	@Override
-	protected void load() 
-		throws IOException 
+	protected void load()
+		throws IOException
 	{
 		BufferedReader br = new BufferedReader(new FileReader(inputFile));
 		br.readLine();
@@ -27,9 +44,9 @@ public class TDataset extends Dataset {
 			super.numAttr++;
 		br.close();
 		super.attribute = new Attribute[super.numAttr];
-		
+
 		br = new BufferedReader(new FileReader(inputFile));
-		
+
 		// parse header
 		String header = br.readLine();
 		String[] hToks = header.split(",");
@@ -38,26 +55,61 @@ public class TDataset extends Dataset {
 		for (int i = 1; i < hToks.length; i++) {
 			super.classAttr[i - 1] = hToks[i];
 		}
-		
-		// initialize data matrix
-		super.data = new double[numInst][numAttr];
-		
-		// read attribute values
-		String line = null;
-		int noAttr = 0;
-		while ((line = br.readLine()) != null) {
-			String[] tok = line.split(",");
-			if (tok.length != super.numInst + 1) {
-				br.close();
-				throw new IOException("IOERR [class: TDataset, constructor]");
-			}
-			
-			super.attribute[noAttr] = new Attribute(noAttr, tok[0]);
-			for (int i = 1; i < tok.length; i++) {
-				super.data[i - 1][noAttr] = Double.parseDouble(tok[i]);
+
+		// initialize data matrix and statistics
+		super.data = keepValues ? new DataMatrix(numInst, numAttr) : null;
+		super.ranks = new double[numAttr][];
+		super.classMI = new double[numAttr];
+
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int maxPending = MAX_PENDING_PER_THREAD * pool.getParallelism();
+		Semaphore pending = new Semaphore(maxPending);
+		AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+		int[] classes = MutualInformationEngine.encodeClasses(classAttr, POSITIVE_CLASS);
+		CorrelationEngine ce = new CorrelationEngine(pool);
+		MutualInformationEngine mie = new MutualInformationEngine(pool);
+
+		// read attribute values, rank attributes in parallel
+		try {
+			String line = null;
+			int noAttr = 0;
+			while ((line = br.readLine()) != null) {
+				String[] tok = line.split(",");
+				if (tok.length != super.numInst + 1) {
+					throw new IOException("IOERR [class: TDataset, constructor]");
+				}
+
+				super.attribute[noAttr] = new Attribute(noAttr, tok[0]);
+				double[] values = new double[numInst];
+				for (int i = 1; i < tok.length; i++) {
+					values[i - 1] = Double.parseDouble(tok[i]);
+				}
+				if (keepValues)
+					System.arraycopy(values, 0, data.values(), data.offset(noAttr), numInst);
+
+				pending.acquireUninterruptibly();
+				final int a = noAttr;
+				pool.execute(new Runnable() {
+					public void run() {
+						try {
+							ranks[a] = ce.normalizedRanks(values);
+							classMI[a] = mie.mutualInformation(values, classes);
+						} catch (RuntimeException re) {
+							error.compareAndSet(null, re);
+						} finally {
+							pending.release();
+						}
+					}
+				});
+
+				++noAttr;
 			}
-			
-			++noAttr;
-		}		
+		} finally {
+			br.close();
+			pending.acquireUninterruptibly(maxPending);
+		}
+		
+		if (error.get() != null)
+			throw error.get();
 	}
 }
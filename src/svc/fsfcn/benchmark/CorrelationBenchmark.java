@@ -0,0 +1,77 @@
+package svc.fsfcn.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import svc.fsfcn.BlockedKernel;
+import svc.fsfcn.CorrelationEngine;
+import svc.fsfcn.CorrelationKernel;
+import svc.fsfcn.ScalarKernel;
+
+/**
+ * Compares correlation kernels on a tall (many instances) and a wide (many attributes)
+ * random data matrix. Usage: CorrelationBenchmark [threads] [repetitions]
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class CorrelationBenchmark {
+	private static final int WARMUP = 2;
+	
+	public static void main(String[] args) {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int reps = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		
+		int[][] shapes = {
+			{20000, 200},    // tall: instances, attributes
+			{200, 3000}      // wide
+		};
+		CorrelationKernel[] kernels = {new ScalarKernel(), new BlockedKernel()};
+		
+		System.out.println("shape,instances,attributes,kernel,threads,ms,pairs/s");
+		for (int[] shape : shapes) {
+			int n = shape[0], numAttr = shape[1];
+			double[][] z = randomRanks(n, numAttr, new CorrelationEngine(pool));
+			
+			double[] reference = null;
+			for (CorrelationKernel kernel : kernels) {
+				CorrelationEngine engine = new CorrelationEngine(pool, kernel);
+				double[] r = null;
+				for (int i = 0; i < WARMUP; i++)
+					r = engine.correlations(z, n);
+				
+				long start = System.nanoTime();
+				for (int i = 0; i < reps; i++)
+					r = engine.correlations(z, n);
+				double ms = (System.nanoTime() - start) / 1e6 / reps;
+				
+				if (reference == null)
+					reference = r;
+				else if (!Arrays.equals(reference, r))
+					System.out.println("[CorrelationBenchmark, kernels " + kernels[0].name() + " and " + kernel.name() + " disagree]");
+				
+				System.out.printf("%s,%d,%d,%s,%d,%.1f,%.3e%n", 
+					n > numAttr ? "tall" : "wide", n, numAttr, kernel.name(), threads, ms, r.length / (ms / 1000.0));
+			}
+		}
+		
+		pool.shutdown();
+	}
+	
+	private static double[][] randomRanks(int n, int numAttr, CorrelationEngine engine) {
+		Random rnd = new Random(1);
+		double[] latent = new double[n];
+		for (int k = 0; k < n; k++)
+			latent[k] = rnd.nextGaussian();
+		
+		double[][] z = new double[numAttr][];
+		double[] column = new double[n];
+		for (int a = 0; a < numAttr; a++) {
+			for (int k = 0; k < n; k++)
+				column[k] = (a % 2 == 0 ? latent[k] : 0.0) + rnd.nextGaussian();
+			z[a] = engine.normalizedRanks(column);
+		}
+		return z;
+	}
+}
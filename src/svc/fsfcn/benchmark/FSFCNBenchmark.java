@@ -0,0 +1,260 @@
+package svc.fsfcn.benchmark;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import svc.fsfcn.CorrelationEngine;
+import svc.fsfcn.Dataset;
+import svc.fsfcn.FCNetwork;
+import svc.fsfcn.FSFCN;
+import svc.fsfcn.MutualInformationEngine;
+import svc.fsfcn.NDataset;
+import svc.fsfcn.TDataset;
+import svc.fsfcn.evaluation.EvaluationBase;
+import weka.core.Instances;
+
+/**
+ * Benchmarks of the FSFCN hot paths on synthetic data (see SyntheticData) for every combination
+ * of the numbers of instances, the numbers of attributes and the correlation structures:
+ *
+ *   init.correlation           correlations of all attribute pairs (the correlation part of Dataset.init)
+ *   init.mi                    mutual information of attributes and the class (the MI part of Dataset.init)
+ *   load.ndataset              NDataset (loading and init)
+ *   load.tdataset              TDataset (loading and init)
+ *   fcn.createConnected        the connected network for the feature relevance threshold
+ *   fcn.selectWithoutClustering
+ *   fsfcn.clusteringQuality    the quality of the partitions of all four variants
+ *   evaluate.fsfcn             EvaluationBase.evaluateFSFCN on the first fold of 10-fold cross validation
+ *                              (naive Bayes), including the dataset of the fold
+ *
+ * Every benchmark is run for WARMUP and MEASURED iterations of at least ITERATION_MS milliseconds.
+ * The throughput, the time per operation, the allocation rate and the allocation per operation
+ * (bytes allocated by all live threads, including worker pools) and the number and time of
+ * garbage collections of measured iterations are printed as CSV. No network is needed
+ *
+ * Usage: FSFCNBenchmark [benchmark prefix|all] [instances,...] [attributes,...] [structures,...]
+ * e.g. FSFCNBenchmark init 200,2000 100,1000 independent,blocks
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class FSFCNBenchmark {
+	private static final int WARMUP = 3;
+	private static final int MEASURED = 5;
+	private static final long ITERATION_MS = 500;
+	private static final long SEED = 1;
+
+	// the feature relevance threshold of network benchmarks
+	private static final double THRESHOLD = 0.05;
+
+	// results of operations are kept here so that they cannot be optimized away
+	private static volatile Object sink;
+
+	/**
+	 * A benchmarked operation on a prepared input
+	 */
+	private interface Operation {
+		Object run() throws Exception;
+	}
+
+	public static void main(String[] args)
+		throws Exception
+	{
+		String filter = args.length > 0 ? args[0] : "all";
+		int[] instances = ints(args.length > 1 ? args[1] : "200,2000");
+		int[] attributes = ints(args.length > 2 ? args[2] : "100,1000");
+		String[] structures = (args.length > 3 ? args[3] : SyntheticData.INDEPENDENT + "," + SyntheticData.BLOCKS).split(",");
+
+		System.out.println("benchmark,instances,attributes,structure,ops/s,ms/op,alloc MB/s,alloc B/op,gc count,gc ms");
+		for (String structure : structures)
+			for (int n : instances)
+				for (int a : attributes)
+					run(filter, new SyntheticData(n, a, structure, SEED));
+	}
+
+	private static void run(String filter, SyntheticData sd)
+		throws Exception
+	{
+		File csv = File.createTempFile("fsfcn-bench", ".csv");
+		File tcsv = File.createTempFile("fsfcn-bench-t", ".csv");
+		csv.deleteOnExit();
+		tcsv.deleteOnExit();
+		sd.write(csv.getPath());
+		sd.writeTransposed(tcsv.getPath());
+
+		int[] classes = MutualInformationEngine.encodeClasses(sd.classes(), Dataset.POSITIVE_CLASS);
+		CorrelationEngine ce = new CorrelationEngine();
+		MutualInformationEngine mie = new MutualInformationEngine();
+
+		measure(filter, "init.correlation", sd, new Operation() {
+			public Object run() {
+				return ce.correlations(sd.data());
+			}
+		});
+		measure(filter, "init.mi", sd, new Operation() {
+			public Object run() {
+				return mie.mutualInformation(sd.data(), classes);
+			}
+		});
+		measure(filter, "load.ndataset", sd, new Operation() {
+			public Object run() throws Exception {
+				return new NDataset(csv.getPath());
+			}
+		});
+		measure(filter, "load.tdataset", sd, new Operation() {
+			public Object run() throws Exception {
+				return new TDataset(tcsv.getPath());
+			}
+		});
+
+		if (selected(filter, "fcn") || selected(filter, "fsfcn")) {
+			Dataset ds = new NDataset(csv.getPath());
+			measure(filter, "fcn.createConnected", sd, new Operation() {
+				public Object run() {
+					FCNetwork fcn = new FCNetwork(ds, THRESHOLD);
+					fcn.createConnected();
+					return fcn;
+				}
+			});
+
+			FCNetwork fcn = new FCNetwork(ds, THRESHOLD);
+			fcn.createConnected();
+			measure(filter, "fcn.selectWithoutClustering", sd, new Operation() {
+				public Object run() {
+					return fcn.selectWithoutClustering();
+				}
+			});
+
+			if (selected(filter, "fsfcn.clusteringQuality")) {
+				if (fcn.numLinks() == 0) {
+					skip("fsfcn.clusteringQuality", sd, "empty network");
+				} else {
+					FSFCN f = new FSFCN(fcn);
+					f.selectFeatures();
+					measure(filter, "fsfcn.clusteringQuality", sd, new Operation() {
+						public Object run() {
+							return new Object[] { f.wtQuality(), f.fgQuality(), f.lvQuality(), f.imQuality() };
+						}
+					});
+				}
+			}
+		}
+
+		if (selected(filter, "evaluate.fsfcn")) {
+			Instances data = EvaluationBase.loadDataset(csv.getPath());
+			EvaluationBase eval = new EvaluationBase(data, "NB") {};
+			Instances randData = new Instances(data);
+			randData.randomize(new Random(SEED));
+			randData.stratify(10);
+			Instances train = randData.trainCV(10, 0);
+			Instances test = randData.testCV(10, 0);
+			try {
+				measure(filter, "evaluate.fsfcn", sd, new Operation() {
+					public Object run() throws Exception {
+						// a new training set object, so the dataset of the fold is built every time
+						return eval.evaluateFSFCN(new Instances(train), test, THRESHOLD);
+					}
+				});
+			} catch (RuntimeException re) {
+				skip("evaluate.fsfcn", sd, re.getMessage());
+			}
+		}
+
+		csv.delete();
+		tcsv.delete();
+	}
+
+	private static boolean selected(String filter, String benchmark) {
+		return filter.equals("all") || benchmark.startsWith(filter) || filter.startsWith(benchmark);
+	}
+
+	private static void measure(String filter, String benchmark, SyntheticData sd, Operation op)
+		throws Exception
+	{
+		if (!filter.equals("all") && !benchmark.startsWith(filter))
+			return;
+
+		for (int i = 0; i < WARMUP; i++)
+			iteration(op);
+
+		long ops = 0, nanos = 0, bytes = 0, gcCount = 0, gcMillis = 0;
+		for (int i = 0; i < MEASURED; i++) {
+			long gcc = gcCount(), gct = gcMillis(), allocated = allocatedBytes();
+			long start = System.nanoTime();
+			ops += iteration(op);
+			nanos += System.nanoTime() - start;
+			bytes += allocatedBytes() - allocated;
+			gcCount += gcCount() - gcc;
+			gcMillis += gcMillis() - gct;
+		}
+
+		double seconds = nanos / 1e9;
+		boolean alloc = allocatedBytes() >= 0;
+		System.out.printf("%s,%d,%d,%s,%.3f,%.6f,%s,%s,%d,%d%n",
+			benchmark, sd.data().numInst(), sd.data().numAttr(), sd.getStructure(),
+			ops / seconds, 1000 * seconds / ops,
+			alloc ? String.format("%.1f", bytes / 1e6 / seconds) : "NA",
+			alloc ? String.valueOf(bytes / ops) : "NA",
+			gcCount, gcMillis);
+	}
+
+	private static void skip(String benchmark, SyntheticData sd, String reason) {
+		System.out.println(benchmark + "," + sd.data().numInst() + "," + sd.data().numAttr() + "," + sd.getStructure() + ",skipped: " + reason);
+	}
+
+	/**
+	 * Runs the operation until ITERATION_MS elapse, returns the number of runs
+	 */
+	private static long iteration(Operation op)
+		throws Exception
+	{
+		long end = System.nanoTime() + ITERATION_MS * 1000000L;
+		long ops = 0;
+		do {
+			sink = op.run();
+			ops++;
+		} while (System.nanoTime() < end);
+		return ops;
+	}
+
+	/**
+	 * Bytes allocated so far by all live threads (-1 if the JVM does not count allocations)
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean tmx = ManagementFactory.getThreadMXBean();
+		if (!(tmx instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean smx = (com.sun.management.ThreadMXBean) tmx;
+		if (!smx.isThreadAllocatedMemorySupported() || !smx.isThreadAllocatedMemoryEnabled())
+			return -1;
+
+		long sum = 0;
+		for (long b : smx.getThreadAllocatedBytes(smx.getAllThreadIds()))
+			if (b > 0)
+				sum += b;
+		return sum;
+	}
+
+	private static long gcCount() {
+		long c = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			c += Math.max(0, gc.getCollectionCount());
+		return c;
+	}
+
+	private static long gcMillis() {
+		long t = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			t += Math.max(0, gc.getCollectionTime());
+		return t;
+	}
+
+	private static int[] ints(String list) {
+		String[] tok = list.split(",");
+		int[] v = new int[tok.length];
+		for (int i = 0; i < tok.length; i++)
+			v[i] = Integer.parseInt(tok[i].trim());
+		return v;
+	}
+}
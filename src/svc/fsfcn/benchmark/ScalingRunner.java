@@ -0,0 +1,320 @@
+package svc.fsfcn.benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import svc.fsfcn.Dataset;
+import svc.fsfcn.FCNetwork;
+import svc.fsfcn.FSFCN;
+import svc.fsfcn.NDataset;
+import svc.fsfcn.TDataset;
+
+/**
+ * Runs the FSFCN pipeline on synthetic datasets (see SyntheticData) of all combinations of the
+ * given numbers of instances and attributes and records the time and the memory of every stage
+ * in a CSV file:
+ *
+ *   generate     the data matrix
+ *   write        the NDataset and TDataset files (only with the "files" option)
+ *   load.ndataset, load.tdataset   loading and init from the files (only with the "files" option)
+ *   dataset      init of the dataset built in memory (correlations, class MI, sorted pairs)
+ *   fcn          the connected network for the feature relevance threshold
+ *   fsfcn        community detection and cluster-driven selection of all four variants
+ *   quality      the clustering quality of the four partitions
+ *
+ * The heap in use before a stage is measured after a garbage collection, the peak is the sum of
+ * the peaks of heap memory pools during the stage (an upper bound of the true peak). Pairs of wide
+ * datasets are kept as configured by Dataset.PAIR_STORE_PROPERTY (off-heap beyond
+ * Dataset.MAX_HEAP_PAIRS pairs by default), so memory outside the heap is recorded separately:
+ * the peak of the direct and mapped buffer pools and the peak resident set size of the process
+ * (from /proc/self/status, NA where it is not available), both sampled every SAMPLE_MS milliseconds
+ * during the stage.
+ *
+ * Sizes whose data matrix exceeds the cell limit are recorded as skipped, a stage that fails is
+ * recorded with its error and ends the pipeline of that size. With the default limit of
+ * DEFAULT_MAX_CELLS cells (a data matrix of 1.6 GB) the default grid is measured only partially,
+ * e.g. 1000000 instances up to 100 attributes and 50000 attributes up to 1000 instances, the
+ * measured and the skipped sizes are printed at startup. Usage:
+ *   ScalingRunner output.csv [instances,...] [attributes,...] [noise fraction] [class MI] [max cells] [files]
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class ScalingRunner {
+	private static final double THRESHOLD = 0.05;
+	private static final long SEED = 1;
+	private static final long DEFAULT_MAX_CELLS = 200000000L;
+	private static final long SAMPLE_MS = 10;
+
+	private PrintWriter out;
+	private int numInst, numAttr;
+
+	/**
+	 * A stage of the pipeline, its result is passed to the next stage
+	 */
+	private interface Stage {
+		Object run() throws Exception;
+	}
+
+	public static void main(String[] args)
+		throws Exception
+	{
+		if (args.length < 1) {
+			System.out.println("Usage: ScalingRunner output.csv [instances,...] [attributes,...] [noise fraction] [class MI] [max cells] [files]");
+			return;
+		}
+
+		int[] instances = ints(args.length > 1 ? args[1] : "100,1000,10000,100000,1000000");
+		int[] attributes = ints(args.length > 2 ? args[2] : "100,1000,10000,50000");
+		double noise = args.length > 3 ? Double.parseDouble(args[3]) : 0.5;
+		double classMI = args.length > 4 ? Double.parseDouble(args[4]) : SyntheticData.DEFAULT_CLASS_MI;
+		long maxCells = args.length > 5 ? Long.parseLong(args[5]) : DEFAULT_MAX_CELLS;
+		boolean files = args.length > 6 && args[6].equals("files");
+		printGrid(instances, attributes, maxCells);
+
+		PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(args[0])));
+		pw.println("instances,attributes,correlated,noise,stage,ms,heap before MB,peak heap MB,peak off-heap MB,peak RSS MB,status");
+		try {
+			for (int a : attributes) {
+				for (int n : instances) {
+					int numNoise = (int) Math.round(noise * a);
+					new ScalingRunner(pw, n, a).run(a - numNoise, numNoise, classMI, maxCells, files);
+					pw.flush();
+				}
+			}
+		} finally {
+			pw.close();
+		}
+	}
+
+	/**
+	 * Prints the sizes measured and skipped because of the cell limit
+	 */
+	private static void printGrid(int[] instances, int[] attributes, long maxCells) {
+		System.out.println("Grid with at most " + maxCells + " cells:");
+		for (int a : attributes) {
+			StringBuilder measured = new StringBuilder(), skipped = new StringBuilder();
+			for (int n : instances)
+				((long) n * a > maxCells ? skipped : measured).append(' ').append(n);
+			System.out.println("  " + a + " attributes, instances:" + (measured.length() > 0 ? measured : " none")
+				+ (skipped.length() > 0 ? " (skipped:" + skipped + ")" : ""));
+		}
+	}
+
+	private ScalingRunner(PrintWriter out, int numInst, int numAttr) {
+		this.out = out;
+		this.numInst = numInst;
+		this.numAttr = numAttr;
+	}
+
+	private void run(int numCorrelated, int numNoise, double classMI, long maxCells, boolean files)
+		throws IOException
+	{
+		String prefix = numInst + "," + numAttr + "," + numCorrelated + "," + numNoise + ",";
+		if ((long) numInst * numAttr > maxCells) {
+			out.println(prefix + "all,,,,,,skipped: more than " + maxCells + " cells");
+			return;
+		}
+
+		File csv = null, tcsv = null;
+		try {
+			SyntheticData sd = (SyntheticData) stage(prefix, "generate", new Stage() {
+				public Object run() {
+					return new SyntheticData(numInst, numCorrelated, numNoise, SyntheticData.DEFAULT_BLOCK_SIZE,
+						SyntheticData.DEFAULT_LOADING, classMI, SEED);
+				}
+			});
+
+			if (files) {
+				File ncsv = File.createTempFile("fsfcn-scaling", ".csv");
+				File tncsv = File.createTempFile("fsfcn-scaling-t", ".csv");
+				csv = ncsv;
+				tcsv = tncsv;
+				stage(prefix, "write", new Stage() {
+					public Object run() throws Exception {
+						sd.write(ncsv.getPath());
+						sd.writeTransposed(tncsv.getPath());
+						return null;
+					}
+				});
+				stage(prefix, "load.ndataset", new Stage() {
+					public Object run() throws Exception {
+						return new NDataset(ncsv.getPath());
+					}
+				});
+				stage(prefix, "load.tdataset", new Stage() {
+					public Object run() throws Exception {
+						return new TDataset(tncsv.getPath(), false);
+					}
+				});
+			}
+
+			Dataset ds = (Dataset) stage(prefix, "dataset", new Stage() {
+				public Object run() {
+					return sd.toDataset();
+				}
+			});
+			FCNetwork fcn = (FCNetwork) stage(prefix, "fcn", new Stage() {
+				public Object run() {
+					FCNetwork f = new FCNetwork(ds, THRESHOLD);
+					f.createConnected();
+					return f;
+				}
+			});
+			if (fcn.numLinks() == 0) {
+				out.println(prefix + "fsfcn,,,,,,skipped: empty network");
+				return;
+			}
+
+			FSFCN f = (FSFCN) stage(prefix, "fsfcn", new Stage() {
+				public Object run() throws Exception {
+					FSFCN f = new FSFCN(fcn);
+					f.selectFeatures();
+					return f;
+				}
+			});
+			stage(prefix, "quality", new Stage() {
+				public Object run() {
+					return new Object[] { f.wtQuality(), f.fgQuality(), f.lvQuality(), f.imQuality() };
+				}
+			});
+		} catch (StageFailure sf) {
+			// recorded by stage()
+		} finally {
+			if (csv != null)
+				csv.delete();
+			if (tcsv != null)
+				tcsv.delete();
+		}
+	}
+
+	/**
+	 * Runs a stage and records its time and memory
+	 */
+	private Object stage(String prefix, String name, Stage stage)
+		throws StageFailure
+	{
+		System.gc();
+		double heapBefore = heapUsed();
+		resetPeaks();
+		MemorySampler sampler = new MemorySampler();
+		Thread st = new Thread(sampler, "ScalingRunner memory sampler");
+		st.setDaemon(true);
+		st.start();
+
+		long start = System.nanoTime();
+		Object result = null;
+		String status = "ok";
+		try {
+			result = stage.run();
+		} catch (Throwable t) {
+			status = "failed: " + String.valueOf(t).replace(',', ';').replace('\n', ' ');
+		}
+		double ms = (System.nanoTime() - start) / 1e6;
+		sampler.stop();
+		try {
+			st.join();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+
+		out.printf("%s%s,%.1f,%.1f,%.1f,%.1f,%s,%s%n", prefix, name, ms, heapBefore, peakHeap(),
+			sampler.peakOffHeap / 1e6, sampler.peakRss < 0 ? "NA" : String.format("%.1f", sampler.peakRss / 1e6), status);
+		System.out.println(prefix + name + "," + status);
+		if (!status.equals("ok"))
+			throw new StageFailure();
+		return result;
+	}
+
+	private static class StageFailure extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Samples the direct and mapped buffer pools and the resident set size until stopped
+	 */
+	private static class MemorySampler implements Runnable {
+		private volatile boolean running = true;
+		private long peakOffHeap;
+		private long peakRss = -1;
+
+		public void run() {
+			do {
+				peakOffHeap = Math.max(peakOffHeap, offHeapUsed());
+				peakRss = Math.max(peakRss, rss());
+				try {
+					Thread.sleep(SAMPLE_MS);
+				} catch (InterruptedException ie) {
+					return;
+				}
+			} while (running);
+			peakOffHeap = Math.max(peakOffHeap, offHeapUsed());
+			peakRss = Math.max(peakRss, rss());
+		}
+
+		void stop() {
+			running = false;
+		}
+	}
+
+	/**
+	 * Bytes in the direct and mapped buffer pools
+	 */
+	private static long offHeapUsed() {
+		long used = 0;
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+			if (pool.getName().equals("direct") || pool.getName().equals("mapped"))
+				used += Math.max(0, pool.getMemoryUsed());
+		return used;
+	}
+
+	/**
+	 * The resident set size of the process in bytes, -1 if it is not available
+	 */
+	private static long rss() {
+		try (BufferedReader br = new BufferedReader(new FileReader("/proc/self/status"))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.startsWith("VmRSS:"))
+					return 1024L * Long.parseLong(line.substring(6).replace("kB", "").trim());
+			}
+		} catch (IOException | NumberFormatException e) {
+			// not Linux
+		}
+		return -1;
+	}
+
+	private static double heapUsed() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1e6;
+	}
+
+	private static void resetPeaks() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				pool.resetPeakUsage();
+	}
+
+	private static double peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		return peak / 1e6;
+	}
+
+	private static int[] ints(String list) {
+		String[] tok = list.split(",");
+		int[] v = new int[tok.length];
+		for (int i = 0; i < tok.length; i++)
+			v[i] = Integer.parseInt(tok[i].trim());
+		return v;
+	}
+}
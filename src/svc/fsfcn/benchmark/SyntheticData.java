@@ -0,0 +1,242 @@
+package svc.fsfcn.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import svc.fsfcn.Attribute;
+import svc.fsfcn.DataMatrix;
+import svc.fsfcn.Dataset;
+
+/**
+ * Synthetic datasets with a planted feature correlation structure. The first attributes form
+ * blocks of correlated attributes: the attributes of a block share a Gaussian latent factor
+ * (attribute = loading * factor + sqrt(1 - loading^2) * noise, so two attributes of a block
+ * have correlation loading^2). The remaining attributes are independent Gaussian noise.
+ *
+ * The class is the sign of the factor of the first block (of the first attribute if there
+ * are no blocks) flipped with probability p, i.e. Dataset.POSITIVE_CLASS or "NC" sent through
+ * a binary symmetric channel. p is chosen so that the mutual information between the class
+ * and the sign of the latent value is the requested number of bits, 1 - H(p)
+ *
+ * Datasets are written in the NDataset (instances in lines) or the TDataset format (attributes
+ * in lines), or built in memory. Usage:
+ *   SyntheticData n|t file instances correlated noise [block size] [loading] [class MI] [seed]
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class SyntheticData {
+	// correlation structures of the benchmarks: all attributes independent or all in blocks
+	public static final String INDEPENDENT = "independent";
+	public static final String BLOCKS = "blocks";
+
+	public static final String NEGATIVE_CLASS = "NC";
+
+	public static final int DEFAULT_BLOCK_SIZE = 10;
+	public static final double DEFAULT_LOADING = 0.8;
+	public static final double DEFAULT_CLASS_MI = 0.5;
+
+	private String structure;
+	private int numCorrelated, blockSize;
+	private double loading, classMI;
+	private DataMatrix data;
+	private String[] classes;
+
+	/**
+	 * numAttr attributes in blocks of DEFAULT_BLOCK_SIZE (BLOCKS) or independent (INDEPENDENT)
+	 */
+	public SyntheticData(int numInst, int numAttr, String structure, long seed) {
+		this(numInst,
+			structure.equals(BLOCKS) ? numAttr : 0,
+			structure.equals(INDEPENDENT) ? numAttr : structure.equals(BLOCKS) ? 0 : -1,
+			DEFAULT_BLOCK_SIZE, DEFAULT_LOADING, DEFAULT_CLASS_MI, seed);
+		this.structure = structure;
+	}
+
+	/**
+	 * numCorrelated attributes in blocks of blockSize (the last block may be smaller) followed by
+	 * numNoise independent attributes, the class carries classMI bits (0 to 1) about the first factor
+	 */
+	public SyntheticData(int numInst, int numCorrelated, int numNoise, int blockSize, double loading, double classMI, long seed) {
+		if (numCorrelated < 0 || numNoise < 0)
+			throw new IllegalArgumentException("[SyntheticData error] unknown correlation structure or negative number of attributes");
+		if (numCorrelated + numNoise < 1)
+			throw new IllegalArgumentException("[SyntheticData error] no attributes");
+		if (blockSize < 1 || loading < 0 || loading > 1 || classMI < 0 || classMI > 1)
+			throw new IllegalArgumentException("[SyntheticData error] block size >= 1, loading in [0, 1] and class MI in [0, 1] bits expected");
+
+		this.structure = numCorrelated + " in blocks of " + blockSize + " + " + numNoise + " noise";
+		this.numCorrelated = numCorrelated;
+		this.blockSize = blockSize;
+		this.loading = loading;
+		this.classMI = classMI;
+
+		int numAttr = numCorrelated + numNoise;
+		data = new DataMatrix(numInst, numAttr);
+		classes = new String[numInst];
+		Random rnd = new Random(seed);
+
+		double[] factor = new double[numInst];
+		double[] values = data.values();
+		double noiseWeight = Math.sqrt(1 - loading * loading);
+		for (int a = 0; a < numAttr; a++) {
+			boolean correlated = a < numCorrelated;
+			if (correlated && a % blockSize == 0) {
+				for (int k = 0; k < numInst; k++)
+					factor[k] = rnd.nextGaussian();
+			}
+
+			int offset = data.offset(a);
+			for (int k = 0; k < numInst; k++) {
+				double noise = rnd.nextGaussian();
+				values[offset + k] = correlated ? loading * factor[k] + noiseWeight * noise : noise;
+			}
+
+			if (a == 0) {
+				// the class follows the first factor (or the first attribute)
+				double p = flipProbability(classMI);
+				for (int k = 0; k < numInst; k++) {
+					boolean positive = (correlated ? factor[k] : values[offset + k]) > 0;
+					if (rnd.nextDouble() < p)
+						positive = !positive;
+					classes[k] = positive ? Dataset.POSITIVE_CLASS : NEGATIVE_CLASS;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The flip probability p <= 1/2 of a binary symmetric channel with capacity 1 - H(p) = mi bits
+	 */
+	public static double flipProbability(double mi) {
+		double low = 0.0, high = 0.5;
+		for (int i = 0; i < 60; i++) {
+			double mid = (low + high) / 2;
+			if (1 - entropy(mid) > mi)
+				low = mid;
+			else
+				high = mid;
+		}
+		return (low + high) / 2;
+	}
+
+	private static double entropy(double p) {
+		if (p <= 0 || p >= 1)
+			return 0.0;
+		return -(p * Math.log(p) + (1 - p) * Math.log(1 - p)) / Math.log(2);
+	}
+
+	public String getStructure() {
+		return structure;
+	}
+
+	public int getNumCorrelated() {
+		return numCorrelated;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public double getLoading() {
+		return loading;
+	}
+
+	public double getClassMI() {
+		return classMI;
+	}
+
+	public DataMatrix data() {
+		return data;
+	}
+
+	public String[] classes() {
+		return classes;
+	}
+
+	/**
+	 * Name of an attribute (C: in a block, N: noise)
+	 */
+	public String attributeName(int a) {
+		return a < numCorrelated ? "C" + (a / blockSize) + "_" + (a % blockSize) : "N" + (a - numCorrelated);
+	}
+
+	/**
+	 * The dataset built in memory (the data matrix is shared, not copied)
+	 */
+	public Dataset toDataset() {
+		Attribute[] attribute = new Attribute[data.numAttr()];
+		for (int a = 0; a < attribute.length; a++)
+			attribute[a] = new Attribute(a, attributeName(a));
+		return new Dataset("Synthetic dataset (" + structure + ")", attribute, data, classes.clone());
+	}
+
+	/**
+	 * Writes the data matrix with instances in lines (NDataset format)
+	 */
+	public void write(String file)
+		throws IOException
+	{
+		PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+		StringBuilder sb = new StringBuilder("class");
+		for (int a = 0; a < data.numAttr(); a++)
+			sb.append(',').append(attributeName(a));
+		pw.println(sb);
+
+		for (int k = 0; k < data.numInst(); k++) {
+			sb.setLength(0);
+			sb.append(classes[k]);
+			for (int a = 0; a < data.numAttr(); a++)
+				sb.append(',').append(data.get(k, a));
+			pw.println(sb);
+		}
+		pw.close();
+	}
+
+	/**
+	 * Writes the data matrix with attributes in lines (TDataset format)
+	 */
+	public void writeTransposed(String file)
+		throws IOException
+	{
+		PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+		StringBuilder sb = new StringBuilder("attribute");
+		for (int k = 0; k < data.numInst(); k++)
+			sb.append(',').append(classes[k]);
+		pw.println(sb);
+
+		double[] values = data.values();
+		for (int a = 0; a < data.numAttr(); a++) {
+			sb.setLength(0);
+			sb.append(attributeName(a));
+			int offset = data.offset(a);
+			for (int k = 0; k < data.numInst(); k++)
+				sb.append(',').append(values[offset + k]);
+			pw.println(sb);
+		}
+		pw.close();
+	}
+
+	public static void main(String[] args)
+		throws IOException
+	{
+		if (args.length < 5 || !(args[0].equals("n") || args[0].equals("t"))) {
+			System.out.println("Usage: SyntheticData n|t file instances correlated noise [block size] [loading] [class MI] [seed]");
+			return;
+		}
+
+		SyntheticData sd = new SyntheticData(
+			Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]),
+			args.length > 5 ? Integer.parseInt(args[5]) : DEFAULT_BLOCK_SIZE,
+			args.length > 6 ? Double.parseDouble(args[6]) : DEFAULT_LOADING,
+			args.length > 7 ? Double.parseDouble(args[7]) : DEFAULT_CLASS_MI,
+			args.length > 8 ? Long.parseLong(args[8]) : 1);
+
+		if (args[0].equals("n"))
+			sd.write(args[1]);
+		else
+			sd.writeTransposed(args[1]);
+	}
+}
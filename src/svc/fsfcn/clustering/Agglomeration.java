@@ -0,0 +1,356 @@
+package svc.fsfcn.clustering;
+
+import java.util.Arrays;
+
+import svc.fsfcn.CSRGraph;
+
+/**
+ * Base class for greedy agglomerative community detection. Only adjacent communities
+ * are merged: every community keeps a row of its neighbouring communities with the link
+ * weight and the merge priority of each pair in an indexed max-heap of the row, and a global
+ * indexed max-heap holds the best priority of every row. An entry knows the position of
+ * the same pair in the row of the neighbour, so a merge updates a neighbouring row in
+ * O(log deg) without searching or shifting it. The pair with the highest priority is merged
+ * until no adjacent communities remain, and the resulting dendrogram is cut at maximum
+ * modularity (as igraph's as_clustering() does)
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+abstract class Agglomeration implements CommunityDetection {
+	protected int n;
+	protected double m2;       // twice the total link weight
+	protected double[] a;      // the fraction of link ends belonging to a community
+	protected int[] size;      // the number of nodes in a community
+
+	private Row[] rows;        // rows of neighbouring communities
+	private IndexedHeap heap;  // the best priority of every non-empty row
+	private int[] mark;        // the entry of a neighbour in the row being merged, -1 if none
+
+	/**
+	 * Initializes algorithm-specific structures before the merging starts
+	 */
+	protected abstract void prepare(CSRGraph g);
+
+	/**
+	 * The priority of merging adjacent nodes i and j connected by a link of weight w
+	 */
+	protected abstract double initialPriority(int i, int j, double w);
+
+	/**
+	 * Called when communities x and y are about to be merged
+	 */
+	protected abstract void startMerge(int x, int y, double vxy);
+
+	/**
+	 * The priority of merging community k with the union of x and y, vxk and vyk are
+	 * the current priorities of the corresponding pairs (NaN if the pair is not adjacent),
+	 * exy is the total weight of links between k and the union
+	 */
+	protected abstract double mergedPriority(int k, int x, int y, double vxk, double vyk, double vxy, double exy);
+
+	/**
+	 * Called when community gone has been merged into community keep
+	 */
+	protected abstract void finishMerge(int keep, int gone);
+
+	/**
+	 * Called when the best priority of the pairs of community i has changed (NaN if the
+	 * community has no neighbours left)
+	 */
+	protected void bestPriorityChanged(int i, double v) {
+	}
+
+	@Override
+	public Partition detect(CSRGraph g) {
+		n = g.numNodes();
+		m2 = 2.0 * g.totalWeight();
+		if (n == 0 || m2 == 0.0) {
+			int[] membership = new int[n];
+			for (int i = 0; i < n; i++)
+				membership[i] = i;
+			return new Partition(g, membership);
+		}
+
+		a = new double[n];
+		size = new int[n];
+		double q0 = 0.0;
+		for (int i = 0; i < n; i++) {
+			a[i] = g.strength(i) / m2;
+			size[i] = 1;
+			q0 -= a[i] * a[i];
+		}
+
+		prepare(g);
+		buildRows(g);
+
+		Dendrogram d = new Dendrogram(n, q0);
+		while (!heap.isEmpty()) {
+			int x = heap.top();
+			Row r = rows[x];
+			int b = r.top();
+			int y = r.nbr[b];
+			d.merge(x, y, 2.0 * (r.e[b] / m2 - a[x] * a[y]));
+			merge(x, y, r.val[b]);
+		}
+
+		rows = null;
+		heap = null;
+		mark = null;
+		return new Partition(g, d.cut(d.optimalSteps()));
+	}
+
+	private void buildRows(CSRGraph g) {
+		rows = new Row[n];
+		heap = new IndexedHeap(n);
+		mark = new int[n];
+		for (int i = 0; i < n; i++) {
+			rows[i] = new Row(g.degree(i));
+			mark[i] = -1;
+		}
+
+		for (int i = 0; i < n; i++) {
+			for (int k = g.begin(i); k < g.end(i); k++) {
+				int j = g.target(k);
+				if (j <= i)
+					continue;
+
+				double w = g.weight(k);
+				double v = initialPriority(i, j, w);
+				int si = rows[i].add(j, w, v, rows[j].len);
+				rows[j].add(i, w, v, si);
+			}
+		}
+
+		for (int i = 0; i < n; i++)
+			updateBest(i);
+	}
+
+	private void updateBest(int i) {
+		Row r = rows[i];
+		if (r.len == 0) {
+			heap.remove(i);
+			bestPriorityChanged(i, Double.NaN);
+		} else {
+			heap.put(i, r.val[r.top()]);
+			bestPriorityChanged(i, r.val[r.top()]);
+		}
+	}
+
+	/**
+	 * Removes entry s from the row of community i and repairs the twin of the entry moved to its place
+	 */
+	private void removeEntry(int i, int s) {
+		Row r = rows[i];
+		r.remove(s);
+		if (s < r.len)
+			rows[r.nbr[s]].twin[r.twin[s]] = s;
+	}
+
+	private void merge(int x, int y, double vxy) {
+		int keep = rows[x].len >= rows[y].len ? x : y;
+		int gone = keep == x ? y : x;
+		Row rk = rows[keep], rg = rows[gone];
+
+		startMerge(x, y, vxy);
+
+		for (int s = 0; s < rg.len; s++)
+			mark[rg.nbr[s]] = s;
+		removeEntry(keep, rg.twin[mark[keep]]);
+
+		// neighbours of keep, the pairs with neighbours of both parts lose their gone entries
+		for (int s = 0; s < rk.len; s++) {
+			int k = rk.nbr[s];
+			int t = mark[k];
+			double w = rk.e[s];
+			double vg = Double.NaN;
+			if (t >= 0) {
+				w += rg.e[t];
+				vg = rg.val[t];
+				removeEntry(k, rg.twin[t]);
+				mark[k] = -1;
+			}
+
+			double v = keep == x
+				? mergedPriority(k, x, y, rk.val[s], vg, vxy, w)
+				: mergedPriority(k, x, y, vg, rk.val[s], vxy, w);
+			rk.e[s] = w;
+			rk.val[s] = v;
+
+			Row rc = rows[k];
+			int c = rk.twin[s];
+			rc.e[c] = w;
+			rc.update(c, v);
+			updateBest(k);
+		}
+
+		// neighbours of gone only, their gone entries are renamed to keep
+		for (int t = 0; t < rg.len; t++) {
+			int k = rg.nbr[t];
+			if (mark[k] < 0)
+				continue;
+			mark[k] = -1;
+			if (k == keep)
+				continue;
+
+			double w = rg.e[t];
+			double v = keep == x
+				? mergedPriority(k, x, y, Double.NaN, rg.val[t], vxy, w)
+				: mergedPriority(k, x, y, rg.val[t], Double.NaN, vxy, w);
+
+			Row rc = rows[k];
+			int c = rg.twin[t];
+			rc.nbr[c] = keep;
+			rc.e[c] = w;
+			rc.twin[c] = rk.add(k, w, v, c);
+			rc.update(c, v);
+			updateBest(k);
+		}
+
+		a[keep] += a[gone];
+		size[keep] += size[gone];
+		finishMerge(keep, gone);
+
+		rows[gone] = null;
+		heap.remove(gone);
+		rk.heapify();
+		updateBest(keep);
+	}
+
+	/**
+	 * Neighbouring communities of a community: unsorted entries with the neighbour, the link
+	 * weight, the merge priority and the position of the same pair in the row of the neighbour
+	 * (twin), and an indexed max-heap of the entries by priority (ties are resolved in favour of
+	 * the lower neighbour to make the merge order deterministic)
+	 */
+	private static class Row {
+		int[] nbr;
+		double[] e;
+		double[] val;
+		int[] twin;
+		int[] heap;        // heap position -> entry
+		int[] pos;         // entry -> heap position
+		int len;
+
+		Row(int capacity) {
+			int cap = Math.max(capacity, 1);
+			nbr = new int[cap];
+			e = new double[cap];
+			val = new double[cap];
+			twin = new int[cap];
+			heap = new int[cap];
+			pos = new int[cap];
+		}
+
+		int top() {
+			return heap[0];
+		}
+
+		/**
+		 * Appends an entry, returns its position
+		 */
+		int add(int j, double w, double v, int t) {
+			if (len == nbr.length) {
+				int cap = 2 * nbr.length;
+				nbr = Arrays.copyOf(nbr, cap);
+				e = Arrays.copyOf(e, cap);
+				val = Arrays.copyOf(val, cap);
+				twin = Arrays.copyOf(twin, cap);
+				heap = Arrays.copyOf(heap, cap);
+				pos = Arrays.copyOf(pos, cap);
+			}
+
+			int s = len++;
+			nbr[s] = j;
+			e[s] = w;
+			val[s] = v;
+			twin[s] = t;
+			heap[s] = s;
+			pos[s] = s;
+			up(s);
+			return s;
+		}
+
+		/**
+		 * Removes entry s, the last entry is moved to its position
+		 */
+		void remove(int s) {
+			len--;
+			int p = pos[s];
+			if (p < len) {
+				int h = heap[len];
+				heap[p] = h;
+				pos[h] = p;
+				up(p);
+				down(pos[h]);
+			}
+
+			if (s < len) {
+				nbr[s] = nbr[len];
+				e[s] = e[len];
+				val[s] = val[len];
+				twin[s] = twin[len];
+				heap[pos[len]] = s;
+				pos[s] = pos[len];
+			}
+		}
+
+		/**
+		 * Changes the priority of entry s (or restores the heap after its neighbour has changed)
+		 */
+		void update(int s, double v) {
+			val[s] = v;
+			up(pos[s]);
+			down(pos[s]);
+		}
+
+		/**
+		 * Restores the heap after the priorities of all entries have changed
+		 */
+		void heapify() {
+			for (int s = 0; s < len; s++) {
+				heap[s] = s;
+				pos[s] = s;
+			}
+			for (int p = len / 2 - 1; p >= 0; p--)
+				down(p);
+		}
+
+		private boolean less(int i, int j) {
+			int a = heap[i], b = heap[j];
+			return val[a] < val[b] || (val[a] == val[b] && nbr[a] > nbr[b]);
+		}
+
+		private void up(int p) {
+			while (p > 0) {
+				int parent = (p - 1) / 2;
+				if (!less(parent, p))
+					break;
+				swap(p, parent);
+				p = parent;
+			}
+		}
+
+		private void down(int p) {
+			while (true) {
+				int l = 2 * p + 1;
+				if (l >= len)
+					break;
+				int c = l;
+				if (l + 1 < len && less(l, l + 1))
+					c = l + 1;
+				if (!less(p, c))
+					break;
+				swap(p, c);
+				p = c;
+			}
+		}
+
+		private void swap(int i, int j) {
+			int a = heap[i], b = heap[j];
+			heap[i] = b;
+			heap[j] = a;
+			pos[b] = i;
+			pos[a] = j;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package svc.fsfcn.clustering;
+
+import java.io.IOException;
+
+import svc.fsfcn.CSRGraph;
+
+/**
+ * Computes the partitions of a feature correlation network used by the FSFCN variants.
+ * Implementations keep no state between calls and may be invoked from several threads
+ * at once (FSFCN instances share no files or other scratch resources)
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public interface Clusterer {
+	// FSFCN variants (indexes in the array of partitions)
+	public static final int WT = 0;
+	public static final int FG = 1;
+	public static final int LV = 2;
+	public static final int IM = 3;
+	
+	public static final int NUM_VARIANTS = 4;
+	
+	public Partition[] cluster(CSRGraph g) throws IOException;
+}
@@ -0,0 +1,12 @@
+package svc.fsfcn.clustering;
+
+import svc.fsfcn.CSRGraph;
+
+/**
+ * Community detection algorithm operating on feature correlation networks
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public interface CommunityDetection {
+	public Partition detect(CSRGraph g);
+}
@@ -0,0 +1,68 @@
+package svc.fsfcn.clustering;
+
+/**
+ * Sequence of merges produced by an agglomerative community detection algorithm
+ * together with the modularity after each merge
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+class Dendrogram {
+	private int n;
+	private int[] left, right;
+	private double[] q;        // q[s] is the modularity after s merges
+	private int numMerges;
+
+	Dendrogram(int n, double initialQ) {
+		this.n = n;
+		left = new int[Math.max(n - 1, 0)];
+		right = new int[Math.max(n - 1, 0)];
+		q = new double[Math.max(n, 1)];
+		q[0] = initialQ;
+	}
+
+	void merge(int a, int b, double deltaQ) {
+		left[numMerges] = a;
+		right[numMerges] = b;
+		q[numMerges + 1] = q[numMerges] + deltaQ;
+		numMerges++;
+	}
+
+	/**
+	 * The number of merges maximizing modularity (the earliest one if there are several)
+	 */
+	int optimalSteps() {
+		int best = 0;
+		for (int s = 1; s <= numMerges; s++)
+			if (q[s] > q[best])
+				best = s;
+		return best;
+	}
+
+	/**
+	 * Membership of nodes after the first steps merges
+	 */
+	int[] cut(int steps) {
+		int[] parent = new int[n];
+		for (int i = 0; i < n; i++)
+			parent[i] = i;
+
+		for (int s = 0; s < steps; s++) {
+			int a = find(parent, left[s]);
+			int b = find(parent, right[s]);
+			parent[a] = b;
+		}
+
+		int[] membership = new int[n];
+		for (int i = 0; i < n; i++)
+			membership[i] = find(parent, i);
+		return membership;
+	}
+
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+}
@@ -0,0 +1,35 @@
+package svc.fsfcn.clustering;
+
+import svc.fsfcn.CSRGraph;
+
+/**
+ * Greedy modularity optimization (Clauset, Newman and Moore), the counterpart of
+ * igraph's community_fastgreedy(...).as_clustering(). The priority of a pair of
+ * adjacent communities is the modularity gain of their merge
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class FastGreedy extends Agglomeration {
+
+	@Override
+	protected void prepare(CSRGraph g) {
+	}
+
+	@Override
+	protected double initialPriority(int i, int j, double w) {
+		return 2.0 * (w / m2 - a[i] * a[j]);
+	}
+
+	@Override
+	protected void startMerge(int x, int y, double vxy) {
+	}
+
+	@Override
+	protected double mergedPriority(int k, int x, int y, double vxk, double vyk, double vxy, double exy) {
+		return 2.0 * (exy / m2 - (a[x] + a[y]) * a[k]);
+	}
+
+	@Override
+	protected void finishMerge(int keep, int gone) {
+	}
+}
@@ -0,0 +1,111 @@
+package svc.fsfcn.clustering;
+
+/**
+ * Indexed binary max-heap over items 0..n-1 with double keys,
+ * supports changing and removing the key of an arbitrary item in O(log n)
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+class IndexedHeap {
+	private int[] heap;      // heap position -> item
+	private int[] pos;       // item -> heap position, -1 if the item is not in the heap
+	private double[] key;
+	private int size;
+
+	IndexedHeap(int n) {
+		heap = new int[n];
+		pos = new int[n];
+		key = new double[n];
+		for (int i = 0; i < n; i++)
+			pos[i] = -1;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	boolean contains(int item) {
+		return pos[item] != -1;
+	}
+
+	int top() {
+		return heap[0];
+	}
+
+	double topKey() {
+		return key[heap[0]];
+	}
+
+	/**
+	 * Inserts the item or changes its key
+	 */
+	void put(int item, double k) {
+		if (pos[item] == -1) {
+			heap[size] = item;
+			pos[item] = size;
+			key[item] = k;
+			up(size++);
+		} else {
+			double old = key[item];
+			key[item] = k;
+			if (k > old)
+				up(pos[item]);
+			else
+				down(pos[item]);
+		}
+	}
+
+	void remove(int item) {
+		int p = pos[item];
+		if (p == -1)
+			return;
+
+		int last = heap[--size];
+		pos[item] = -1;
+		if (p < size) {
+			heap[p] = last;
+			pos[last] = p;
+			up(p);
+			down(pos[last]);
+		}
+	}
+
+	private boolean less(int i, int j) {
+		// ties are resolved in favour of the lower item to make the merge order deterministic
+		double ki = key[heap[i]], kj = key[heap[j]];
+		return ki < kj || (ki == kj && heap[i] > heap[j]);
+	}
+
+	private void up(int p) {
+		while (p > 0) {
+			int parent = (p - 1) / 2;
+			if (!less(parent, p))
+				break;
+			swap(p, parent);
+			p = parent;
+		}
+	}
+
+	private void down(int p) {
+		while (true) {
+			int l = 2 * p + 1;
+			if (l >= size)
+				break;
+			int c = l;
+			if (l + 1 < size && less(l, l + 1))
+				c = l + 1;
+			if (!less(p, c))
+				break;
+			swap(p, c);
+			p = c;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int a = heap[i], b = heap[j];
+		heap[i] = b;
+		heap[j] = a;
+		pos[b] = i;
+		pos[a] = j;
+	}
+}
@@ -0,0 +1,305 @@
+package svc.fsfcn.clustering;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import svc.fsfcn.CSRGraph;
+
+/**
+ * Infomap -- community detection by minimizing the two-level map equation, the counterpart
+ * of igraph's community_infomap for undirected weighted networks (the flow of a node is
+ * proportional to its strength).
+ *
+ * Independent trials are executed concurrently on a fork-join pool. Each trial uses its own
+ * random number generator seeded from the trial index, and the partition with the shortest
+ * code length is kept (ties are resolved in favour of the lower trial index), so the result
+ * depends only on the seed and not on the number of threads. As in igraph, the one-module
+ * solution (code length = entropy of node flows) is kept unless a trial beats it, and a node
+ * may also move into an empty module of its own
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class Infomap implements CommunityDetection {
+	private static final double MIN_IMPROVEMENT = 1e-10;
+	private static final int MAX_PASSES = 1000;
+	private static final double LOG2 = Math.log(2.0);
+
+	private int trials;
+	private long seed;
+	private ForkJoinPool pool;
+
+	public Infomap() {
+		this(100, 1L, ForkJoinPool.commonPool());
+	}
+
+	public Infomap(int trials, long seed, ForkJoinPool pool) {
+		this.trials = trials;
+		this.seed = seed;
+		this.pool = pool;
+	}
+
+	@Override
+	public Partition detect(CSRGraph g) {
+		final LevelGraph lg = LevelGraph.of(g);
+		if (lg.m2 == 0.0) {
+			int[] membership = new int[g.numNodes()];
+			for (int i = 0; i < membership.length; i++)
+				membership[i] = i;
+			return new Partition(g, membership);
+		}
+
+		List<Callable<Trial>> tasks = new ArrayList<Callable<Trial>>(trials);
+		for (int t = 0; t < trials; t++) {
+			final long trialSeed = trialSeed(t);
+			tasks.add(new Callable<Trial>() {
+				public Trial call() {
+					return new Trial(lg, new Random(trialSeed)).run();
+				}
+			});
+		}
+
+		// code length of the one-module partition, the entropy of node flows
+		double oneModule = 0.0;
+		for (int i = 0; i < lg.n; i++)
+			oneModule -= plogp(lg.strength[i] / lg.m2);
+
+		Trial best = null;
+		try {
+			List<Future<Trial>> res = pool.invokeAll(tasks);
+			for (int t = 0; t < res.size(); t++) {
+				Trial trial = res.get(t).get();
+				if (best == null || trial.codeLength < best.codeLength)
+					best = trial;
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("[Infomap error] interrupted", ie);
+		} catch (ExecutionException ee) {
+			throw new IllegalStateException("[Infomap error] trial failed", ee.getCause());
+		}
+
+		if (!(best.codeLength < oneModule - MIN_IMPROVEMENT))
+			return new Partition(g, new int[g.numNodes()]);
+		return new Partition(g, best.membership);
+	}
+
+	private long trialSeed(int t) {
+		// SplitMix64 finalizer, decorrelates seeds of consecutive trials
+		long z = seed + (t + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private static double plogp(double p) {
+		return p > 0.0 ? p * Math.log(p) / LOG2 : 0.0;
+	}
+
+	/**
+	 * One Infomap trial: repeated greedy node moving and aggregation of modules into nodes
+	 */
+	private static class Trial {
+		private LevelGraph g0;
+		private Random rnd;
+		private int[] membership;
+		private double codeLength;
+
+		// constant term of the map equation (entropy of node visit rates)
+		private double nodeFlowTerm;
+
+		// module state (in link weight units, flows are obtained by dividing with m2)
+		private double[] tot, exit;
+		private double sumExit, sumPlogpExit, sumPlogpExitFlow;
+
+		// the number of nodes (of the current level) in a module, and modules left empty
+		private int[] members;
+		private int[] empty;
+		private int numEmpty;
+
+		Trial(LevelGraph g0, Random rnd) {
+			this.g0 = g0;
+			this.rnd = rnd;
+		}
+
+		Trial run() {
+			int n = g0.n;
+			membership = new int[n];
+			for (int i = 0; i < n; i++)
+				membership[i] = i;
+
+			nodeFlowTerm = 0.0;
+			for (int i = 0; i < n; i++)
+				nodeFlowTerm += plogp(g0.strength[i] / g0.m2);
+
+			LevelGraph lg = g0;
+			codeLength = Double.POSITIVE_INFINITY;
+			while (true) {
+				int[] module = moveNodes(lg);
+				int numModules = LevelGraph.renumber(module);
+				codeLength = codeLength();
+				if (numModules == lg.n)
+					break;
+
+				for (int i = 0; i < n; i++)
+					membership[i] = module[membership[i]];
+
+				lg = lg.aggregate(module, numModules);
+			}
+
+			return this;
+		}
+
+		private double codeLength() {
+			double m2 = g0.m2;
+			return plogp(sumExit / m2) - 2.0 * sumPlogpExit - nodeFlowTerm + sumPlogpExitFlow;
+		}
+
+		private void initModules(LevelGraph lg) {
+			tot = new double[lg.n];
+			exit = new double[lg.n];
+			members = new int[lg.n];
+			empty = new int[lg.n];
+			numEmpty = 0;
+			sumExit = sumPlogpExit = sumPlogpExitFlow = 0.0;
+			for (int i = 0; i < lg.n; i++) {
+				members[i] = 1;
+				tot[i] = lg.strength[i];
+				exit[i] = lg.strength[i] - 2.0 * lg.loop[i];
+				addTerms(i, 1.0);
+			}
+		}
+
+		private void addTerms(int m, double sign) {
+			double m2 = g0.m2;
+			sumExit += sign * exit[m];
+			sumPlogpExit += sign * plogp(exit[m] / m2);
+			sumPlogpExitFlow += sign * plogp((exit[m] + tot[m]) / m2);
+		}
+
+		private int[] moveNodes(LevelGraph lg) {
+			initModules(lg);
+			double m2 = g0.m2;
+
+			int[] module = new int[lg.n];
+			for (int i = 0; i < lg.n; i++)
+				module[i] = i;
+
+			int[] order = new int[lg.n];
+			for (int i = 0; i < lg.n; i++)
+				order[i] = i;
+
+			double[] acc = new double[lg.n];
+			boolean[] seen = new boolean[lg.n];
+			int[] touched = new int[lg.n];
+
+			for (int pass = 0; pass < MAX_PASSES; pass++) {
+				// random visiting order
+				for (int i = lg.n - 1; i > 0; i--) {
+					int j = rnd.nextInt(i + 1);
+					int tmp = order[i];
+					order[i] = order[j];
+					order[j] = tmp;
+				}
+
+				int moves = 0;
+				for (int o = 0; o < lg.n; o++) {
+					int i = order[o];
+					int own = module[i];
+					double ki = lg.strength[i];
+					double li = 2.0 * lg.loop[i];
+
+					int numTouched = 0;
+					seen[own] = true;
+					touched[numTouched++] = own;
+					for (int k = lg.offset[i]; k < lg.offset[i + 1]; k++) {
+						int c = module[lg.target[k]];
+						if (!seen[c]) {
+							seen[c] = true;
+							touched[numTouched++] = c;
+						}
+						acc[c] += lg.w[k];
+					}
+
+					// own module without node i
+					double ownTot = tot[own] - ki;
+					double ownExit = exit[own] - (ki - li) + 2.0 * acc[own];
+
+					double baseExit = sumExit - exit[own] + ownExit;
+					double basePlogpExit = sumPlogpExit - plogp(exit[own] / m2) + plogp(ownExit / m2);
+					double basePlogpExitFlow = sumPlogpExitFlow - plogp((exit[own] + tot[own]) / m2) + plogp((ownExit + ownTot) / m2);
+
+					double current = plogp(sumExit / m2) - 2.0 * sumPlogpExit + sumPlogpExitFlow;
+					int best = own;
+					double bestCl = current;
+					double bestExit = 0.0;
+					for (int t = 1; t < numTouched; t++) {
+						int c = touched[t];
+						double newExit = exit[c] + (ki - li) - 2.0 * acc[c];
+						double newTot = tot[c] + ki;
+						double cl = plogp((baseExit - exit[c] + newExit) / m2)
+							- 2.0 * (basePlogpExit - plogp(exit[c] / m2) + plogp(newExit / m2))
+							+ basePlogpExitFlow - plogp((exit[c] + tot[c]) / m2) + plogp((newExit + newTot) / m2);
+						if (cl < bestCl - MIN_IMPROVEMENT) {
+							bestCl = cl;
+							best = c;
+							bestExit = newExit;
+						}
+					}
+
+					// an empty module (the node alone) if its module has other nodes
+					if (members[own] > 1 && numEmpty > 0) {
+						int c = empty[numEmpty - 1];
+						double newExit = ki - li;
+						double cl = plogp((baseExit + newExit) / m2)
+							- 2.0 * (basePlogpExit + plogp(newExit / m2))
+							+ basePlogpExitFlow + plogp((newExit + ki) / m2);
+						if (cl < bestCl - MIN_IMPROVEMENT) {
+							bestCl = cl;
+							best = c;
+							bestExit = newExit;
+						}
+					}
+
+					if (best != own) {
+						if (members[best] == 0)
+							numEmpty--;
+						members[own]--;
+						members[best]++;
+						if (members[own] == 0) {
+							empty[numEmpty++] = own;
+							ownTot = 0.0;
+							ownExit = 0.0;
+						}
+
+						addTerms(own, -1.0);
+						addTerms(best, -1.0);
+						tot[own] = ownTot;
+						exit[own] = ownExit;
+						tot[best] += ki;
+						exit[best] = bestExit;
+						addTerms(own, 1.0);
+						addTerms(best, 1.0);
+						module[i] = best;
+						moves++;
+					}
+
+					for (int t = 0; t < numTouched; t++) {
+						int c = touched[t];
+						acc[c] = 0.0;
+						seen[c] = false;
+					}
+				}
+
+				if (moves == 0)
+					break;
+			}
+
+			return module;
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package svc.fsfcn.clustering;
+
+import svc.fsfcn.CSRGraph;
+
+/**
+ * Weighted graph at one level of a multilevel community detection algorithm.
+ * The nodes of a coarser level are the communities of the previous level,
+ * links inside a community are kept as self-loops
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+class LevelGraph {
+	final int n;
+	final int[] offset;
+	final int[] target;
+	final double[] w;
+	final double[] loop;       // total weight of self-loops (each internal link counted once)
+	final double[] strength;   // the sum of incident link weights, self-loops are counted twice
+	final double m2;           // twice the total link weight
+
+	LevelGraph(int n, int[] offset, int[] target, double[] w, double[] loop) {
+		this.n = n;
+		this.offset = offset;
+		this.target = target;
+		this.w = w;
+		this.loop = loop;
+
+		strength = new double[n];
+		double sum = 0.0;
+		for (int i = 0; i < n; i++) {
+			double s = 2.0 * loop[i];
+			for (int k = offset[i]; k < offset[i + 1]; k++)
+				s += w[k];
+			strength[i] = s;
+			sum += s;
+		}
+		m2 = sum;
+	}
+
+	static LevelGraph of(CSRGraph g) {
+		int n = g.numNodes();
+		int[] offset = new int[n + 1];
+		for (int i = 0; i < n; i++)
+			offset[i + 1] = g.end(i);
+
+		int[] target = new int[offset[n]];
+		double[] w = new double[offset[n]];
+		for (int k = 0; k < target.length; k++) {
+			target[k] = g.target(k);
+			w[k] = g.weight(k);
+		}
+
+		return new LevelGraph(n, offset, target, w, new double[n]);
+	}
+
+	/**
+	 * Renumbers community ids to 0..k-1 in the order of the first appearance, returns k
+	 */
+	static int renumber(int[] comm) {
+		int[] newId = new int[comm.length];
+		for (int i = 0; i < newId.length; i++)
+			newId[i] = -1;
+
+		int num = 0;
+		for (int i = 0; i < comm.length; i++) {
+			if (newId[comm[i]] == -1)
+				newId[comm[i]] = num++;
+			comm[i] = newId[comm[i]];
+		}
+
+		return num;
+	}
+
+	/**
+	 * Collapses communities into nodes, comm[i] is in 0..numComm-1
+	 */
+	LevelGraph aggregate(int[] comm, int numComm) {
+		// group nodes by community
+		int[] start = new int[numComm + 1];
+		for (int i = 0; i < n; i++)
+			start[comm[i] + 1]++;
+		for (int c = 0; c < numComm; c++)
+			start[c + 1] += start[c];
+		int[] member = new int[n];
+		int[] pos = new int[numComm];
+		System.arraycopy(start, 0, pos, 0, numComm);
+		for (int i = 0; i < n; i++)
+			member[pos[comm[i]]++] = i;
+
+		double[] acc = new double[numComm];
+		int[] touched = new int[numComm];
+		boolean[] seen = new boolean[numComm];
+		double[] newLoop = new double[numComm];
+		int[] newOffset = new int[numComm + 1];
+		int[] newTarget = new int[target.length];
+		double[] newW = new double[target.length];
+		int size = 0;
+
+		for (int c = 0; c < numComm; c++) {
+			int numTouched = 0;
+			for (int p = start[c]; p < start[c + 1]; p++) {
+				int i = member[p];
+				newLoop[c] += loop[i];
+				for (int k = offset[i]; k < offset[i + 1]; k++) {
+					int d = comm[target[k]];
+					if (d == c) {
+						newLoop[c] += w[k] / 2.0;
+					} else {
+						if (!seen[d]) {
+							seen[d] = true;
+							touched[numTouched++] = d;
+						}
+						acc[d] += w[k];
+					}
+				}
+			}
+
+			for (int t = 0; t < numTouched; t++) {
+				int d = touched[t];
+				newTarget[size] = d;
+				newW[size++] = acc[d];
+				acc[d] = 0.0;
+				seen[d] = false;
+			}
+			newOffset[c + 1] = size;
+		}
+
+		int[] t = new int[size];
+		double[] tw = new double[size];
+		System.arraycopy(newTarget, 0, t, 0, size);
+		System.arraycopy(newW, 0, tw, 0, size);
+		return new LevelGraph(numComm, newOffset, t, tw, newLoop);
+	}
+
+	/**
+	 * Splits every community into its connected components and renumbers communities,
+	 * returns the new number of communities
+	 */
+	int splitDisconnected(int[] comm) {
+		int[] newComm = new int[n];
+		for (int i = 0; i < n; i++)
+			newComm[i] = -1;
+
+		int[] queue = new int[n];
+		int num = 0;
+		for (int s = 0; s < n; s++) {
+			if (newComm[s] != -1)
+				continue;
+
+			int head = 0, tail = 0;
+			queue[tail++] = s;
+			newComm[s] = num;
+			while (head < tail) {
+				int i = queue[head++];
+				for (int k = offset[i]; k < offset[i + 1]; k++) {
+					int j = target[k];
+					if (newComm[j] == -1 && comm[j] == comm[s]) {
+						newComm[j] = num;
+						queue[tail++] = j;
+					}
+				}
+			}
+			num++;
+		}
+
+		System.arraycopy(newComm, 0, comm, 0, n);
+		return num;
+	}
+}
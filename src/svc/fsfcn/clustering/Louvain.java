@@ -0,0 +1,263 @@
+package svc.fsfcn.clustering;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import svc.fsfcn.CSRGraph;
+
+/**
+ * Multilevel (Louvain) modularity optimization, the counterpart of igraph's community_multilevel.
+ *
+ * Small levels are processed sequentially. On large levels the local moving phase is parallel:
+ * nodes are visited in fixed-size chunks, the best community of every node in a chunk is determined
+ * concurrently w.r.t. the state at the beginning of the chunk and then the proposed moves are
+ * re-validated and applied in the node order. The outcome therefore does not depend on the number of threads.
+ *
+ * After each level, communities are split into their connected components (as in the Leiden algorithm)
+ * which guarantees connected clusters and never decreases modularity
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class Louvain implements CommunityDetection {
+	private static final double MIN_GAIN = 1e-12;
+	private static final int MAX_PASSES = 1000;
+	private static final int PARALLEL_THRESHOLD = 4096;
+	private static final int CHUNK = 1024;
+
+	private ForkJoinPool pool;
+	private boolean refine;
+
+	public Louvain() {
+		this(ForkJoinPool.commonPool(), true);
+	}
+
+	public Louvain(ForkJoinPool pool, boolean refine) {
+		this.pool = pool;
+		this.refine = refine;
+	}
+
+	@Override
+	public Partition detect(CSRGraph g) {
+		int n = g.numNodes();
+		int[] membership = new int[n];
+		for (int i = 0; i < n; i++)
+			membership[i] = i;
+
+		LevelGraph level = LevelGraph.of(g);
+		while (level.n > 0 && level.m2 > 0.0) {
+			int[] comm = moveNodes(level);
+			int numComm = LevelGraph.renumber(comm);
+			if (refine)
+				numComm = level.splitDisconnected(comm);
+
+			if (numComm == level.n)
+				break;
+
+			for (int i = 0; i < n; i++)
+				membership[i] = comm[membership[i]];
+
+			level = level.aggregate(comm, numComm);
+		}
+
+		return new Partition(g, membership);
+	}
+
+	/**
+	 * Local moving phase, returns the community of every node
+	 */
+	private int[] moveNodes(LevelGraph lg) {
+		State s = new State(lg);
+		boolean chunked = lg.n >= PARALLEL_THRESHOLD;
+		boolean parallel = chunked && pool.getParallelism() > 1;
+
+		int numSegments = parallel ? pool.getParallelism() : 1;
+		Scratch[] scratch = new Scratch[numSegments];
+		for (int i = 0; i < numSegments; i++)
+			scratch[i] = new Scratch(lg.n);
+
+		int[] proposal = chunked ? new int[lg.n] : null;
+
+		for (int pass = 0; pass < MAX_PASSES; pass++) {
+			int moves = 0;
+			if (chunked) {
+				for (int from = 0; from < lg.n; from += CHUNK) {
+					int to = Math.min(lg.n, from + CHUNK);
+					if (parallel)
+						pool.invoke(new ProposalTask(s, scratch, proposal, from, to));
+					else
+						for (int i = from; i < to; i++)
+							proposal[i] = s.bestCommunity(i, scratch[0]);
+
+					for (int i = from; i < to; i++)
+						if (proposal[i] != s.comm[i] && s.tryMove(i, proposal[i]))
+							moves++;
+				}
+			} else {
+				for (int i = 0; i < lg.n; i++) {
+					int best = s.bestCommunity(i, scratch[0]);
+					if (best != s.comm[i]) {
+						s.move(i, best);
+						moves++;
+					}
+				}
+			}
+
+			if (moves == 0)
+				break;
+		}
+
+		return s.comm;
+	}
+
+	/**
+	 * Communities of nodes and their total strengths
+	 */
+	private static class State {
+		LevelGraph lg;
+		int[] comm;
+		double[] tot;
+
+		State(LevelGraph lg) {
+			this.lg = lg;
+			comm = new int[lg.n];
+			tot = new double[lg.n];
+			for (int i = 0; i < lg.n; i++) {
+				comm[i] = i;
+				tot[i] = lg.strength[i];
+			}
+		}
+
+		/**
+		 * The community maximizing the modularity gain of node i (read-only w.r.t. the state)
+		 */
+		int bestCommunity(int i, Scratch sc) {
+			int own = comm[i];
+			double ki = lg.strength[i];
+			int numTouched = 0;
+			sc.seen[own] = true;
+			sc.touched[numTouched++] = own;
+
+			for (int k = lg.offset[i]; k < lg.offset[i + 1]; k++) {
+				int c = comm[lg.target[k]];
+				if (!sc.seen[c]) {
+					sc.seen[c] = true;
+					sc.touched[numTouched++] = c;
+				}
+				sc.acc[c] += lg.w[k];
+			}
+
+			int best = own;
+			double bestGain = sc.acc[own] - (tot[own] - ki) * ki / lg.m2;
+			for (int t = 1; t < numTouched; t++) {
+				int c = sc.touched[t];
+				double gain = sc.acc[c] - tot[c] * ki / lg.m2;
+				if (gain > bestGain + MIN_GAIN) {
+					bestGain = gain;
+					best = c;
+				}
+			}
+
+			for (int t = 0; t < numTouched; t++) {
+				int c = sc.touched[t];
+				sc.acc[c] = 0.0;
+				sc.seen[c] = false;
+			}
+
+			return best;
+		}
+
+		/**
+		 * Applies a proposed move if it still improves modularity w.r.t. the current state
+		 */
+		boolean tryMove(int i, int target) {
+			int own = comm[i];
+			double ki = lg.strength[i];
+			double kOwn = 0.0, kTarget = 0.0;
+			for (int k = lg.offset[i]; k < lg.offset[i + 1]; k++) {
+				int c = comm[lg.target[k]];
+				if (c == own)
+					kOwn += lg.w[k];
+				else if (c == target)
+					kTarget += lg.w[k];
+			}
+
+			double ownGain = kOwn - (tot[own] - ki) * ki / lg.m2;
+			double targetGain = kTarget - tot[target] * ki / lg.m2;
+			if (targetGain > ownGain + MIN_GAIN) {
+				move(i, target);
+				return true;
+			}
+
+			return false;
+		}
+
+		void move(int i, int target) {
+			double ki = lg.strength[i];
+			tot[comm[i]] -= ki;
+			tot[target] += ki;
+			comm[i] = target;
+		}
+	}
+
+	/**
+	 * Per-thread work arrays
+	 */
+	private static class Scratch {
+		double[] acc;
+		boolean[] seen;
+		int[] touched;
+
+		Scratch(int n) {
+			acc = new double[n];
+			seen = new boolean[n];
+			touched = new int[n];
+		}
+	}
+
+	/**
+	 * Determines proposals for nodes from..to-1, one segment per worker thread
+	 */
+	private static class ProposalTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private State s;
+		private Scratch[] scratch;
+		private int[] proposal;
+		private int from, to;
+
+		ProposalTask(State s, Scratch[] scratch, int[] proposal, int from, int to) {
+			this.s = s;
+			this.scratch = scratch;
+			this.proposal = proposal;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			int numSegments = scratch.length;
+			int len = (to - from + numSegments - 1) / numSegments;
+			ArrayList<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+			for (int seg = 0; seg < numSegments; seg++) {
+				final int segFrom = from + seg * len;
+				final int segTo = Math.min(to, segFrom + len);
+				final Scratch sc = scratch[seg];
+				if (segFrom >= segTo)
+					break;
+
+				tasks.add(new RecursiveAction() {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected void compute() {
+						for (int i = segFrom; i < segTo; i++)
+							proposal[i] = s.bestCommunity(i, sc);
+					}
+				});
+			}
+
+			invokeAll(tasks);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package svc.fsfcn.clustering;
+
+import svc.fsfcn.CSRGraph;
+
+/**
+ * Clusterer running the community detection algorithms in the JVM
+ * (Walktrap, fast greedy, Louvain and Infomap). Every call works on its own algorithm
+ * instances, so one clusterer can serve many threads at once
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class NativeClusterer implements Clusterer {
+	// identifies the partitions produced, changed whenever an algorithm gives different partitions
+	public static final String VERSION = "native-3";
+	
+	@Override
+	public Partition[] cluster(CSRGraph g) {
+		// agglomerative algorithms keep per-run state in their fields
+		CommunityDetection[] algorithm = new CommunityDetection[NUM_VARIANTS];
+		algorithm[WT] = new Walktrap();
+		algorithm[FG] = new FastGreedy();
+		algorithm[LV] = new Louvain();
+		algorithm[IM] = new Infomap();
+		
+		Partition[] p = new Partition[NUM_VARIANTS];
+		for (int i = 0; i < NUM_VARIANTS; i++)
+			p[i] = algorithm[i].detect(g);
+		return p;
+	}
+}
@@ -0,0 +1,143 @@
+package svc.fsfcn.clustering;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import svc.fsfcn.BinaryFile;
+import svc.fsfcn.CSRGraph;
+
+/**
+ * Partition of a feature correlation network into clusters (communities)
+ *
+ * Binary format (see BinaryFile): magic "FCP1", double modularity, int n, n x int cluster id.
+ * The text format (modularity, the number of clusters, then "id,name,cluster" lines)
+ * is intended for debugging
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class Partition {
+	public static final int MAGIC = 0x46435031;   // "FCP1"
+	
+	private int[] membership;   // cluster ids, numbered from 0 in the order of the first appearance
+	private int numClusters;
+	private double modularity;
+
+	public Partition(int[] membership, double modularity) {
+		this.membership = membership;
+		this.numClusters = renumber(membership);
+		this.modularity = modularity;
+	}
+
+	public Partition(CSRGraph g, int[] membership) {
+		this.membership = membership;
+		this.numClusters = renumber(membership);
+		this.modularity = modularity(g, membership, numClusters);
+	}
+
+	public int cluster(int node) {
+		return membership[node];
+	}
+
+	public int[] membership() {
+		return membership;
+	}
+
+	public int numClusters() {
+		return numClusters;
+	}
+
+	public double modularity() {
+		return modularity;
+	}
+
+	public void save(String outFile)
+		throws IOException
+	{
+		try (BinaryFile.Writer out = new BinaryFile.Writer(outFile, MAGIC)) {
+			out.putDouble(modularity);
+			out.putInt(membership.length);
+			for (int i = 0; i < membership.length; i++)
+				out.putInt(membership[i]);
+		}
+	}
+	
+	public static Partition load(String inFile)
+		throws IOException
+	{
+		try (BinaryFile.Reader in = new BinaryFile.Reader(inFile, MAGIC)) {
+			double q = in.getDouble();
+			int n = in.getInt();
+			if (n < 0 || 4L * n > in.remaining())
+				throw new IOException("IOERR [class: Partition, load] invalid number of nodes " + n 
+					+ " for " + in.remaining() + " remaining bytes");
+			int[] membership = new int[n];
+			for (int i = 0; i < membership.length; i++) {
+				membership[i] = in.getInt();
+				if (membership[i] < 0)
+					throw new IOException("IOERR [class: Partition, load] invalid cluster id " + membership[i]);
+			}
+			return new Partition(membership, q);
+		}
+	}
+	
+	public void saveText(String outFile, CSRGraph g)
+		throws IOException
+	{
+		PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(outFile)));
+		pw.println(modularity);
+		pw.println(numClusters);
+		for (int i = 0; i < membership.length; i++)
+			pw.println(g.node(i).getId() + "," + g.node(i).getName() + "," + membership[i]);
+		pw.close();
+	}
+
+	private static int renumber(int[] membership) {
+		int max = -1;
+		for (int i = 0; i < membership.length; i++)
+			if (membership[i] > max)
+				max = membership[i];
+
+		int[] newId = new int[max + 1];
+		for (int i = 0; i < newId.length; i++)
+			newId[i] = -1;
+
+		int num = 0;
+		for (int i = 0; i < membership.length; i++) {
+			int c = membership[i];
+			if (newId[c] == -1)
+				newId[c] = num++;
+			membership[i] = newId[c];
+		}
+
+		return num;
+	}
+
+	/**
+	 * Weighted modularity (link weights are absolute values of correlations)
+	 */
+	public static double modularity(CSRGraph g, int[] membership, int numClusters) {
+		double m2 = 2.0 * g.totalWeight();
+		if (m2 == 0.0)
+			return Double.NaN;
+
+		double[] in = new double[numClusters];
+		double[] tot = new double[numClusters];
+		for (int i = 0; i < g.numNodes(); i++) {
+			int c = membership[i];
+			tot[c] += g.strength(i);
+			for (int k = g.begin(i); k < g.end(i); k++)
+				if (membership[g.target(k)] == c)
+					in[c] += g.weight(k);
+		}
+
+		double q = 0.0;
+		for (int c = 0; c < numClusters; c++) {
+			double a = tot[c] / m2;
+			q += in[c] / m2 - a * a;
+		}
+
+		return q;
+	}
+}
@@ -0,0 +1,415 @@
+package svc.fsfcn.clustering;
+
+import java.util.Arrays;
+
+import svc.fsfcn.CSRGraph;
+
+/**
+ * Walktrap community detection (Pons and Latapy), the counterpart of igraph's
+ * community_walktrap(...).as_clustering(). Communities are compared by the distance of
+ * their t-step random walk probability vectors. The vector of a merged community is
+ * obtained incrementally as the size-weighted average of the vectors of its parts, and
+ * the distance to a community adjacent to both parts is updated by the Lance-Williams
+ * formula without touching the vectors. Other distances are computed from the norms of
+ * the vectors and their inner product, one vector of the product is scattered into a
+ * dense buffer that is reused by all products with it.
+ *
+ * As in the reference implementation, every node has a self-loop whose weight is the
+ * average weight of its links, vectors are computed when they are first needed and their
+ * total size is bounded (MEMORY_PROPERTY in MB, a quarter of the maximum heap by default).
+ * When a new vector does not fit, the vectors of communities with the largest minimal
+ * distance to their neighbours (the communities that will be merged last) are dropped, and
+ * computed again from the members of the community if they are needed later. Vectors are
+ * stored in single precision, sparse unless they fill more than half of the nodes (where the
+ * dense layout is smaller)
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class Walktrap extends Agglomeration {
+	// the memory for probability vectors in MB
+	public static final String MEMORY_PROPERTY = "fsfcn.walktrap.memory";
+
+	private int steps;
+	private long maxMemory;
+
+	private CSRGraph g;
+	private double[] d;         // node strength including the self-loop
+	private double[] loop;
+
+	private Vec[] p;            // scaled probability vectors of communities, D^(-1/2) P^t, null if not computed
+	private double[] norm;      // squared norms of the vectors of communities (kept when a vector is dropped)
+	private double[] minDs;     // the minimal distance of a community to its neighbours
+	private IndexedHeap cached; // communities with a vector by minDs, except the communities being merged
+	private long memory;        // bytes of all vectors
+	private Vec merged;         // vector of the community being merged
+
+	private int[] firstMember, lastMember, nextMember;   // members of communities, -1 terminated
+
+	private float[] buffer;     // the scattered vector
+	private Vec scattered;
+	private int scatteredNode;  // the node whose vector is scattered (-1: another vector)
+
+	// propagation buffers
+	private double[] cur, next;
+	private boolean[] inCur, inNext;
+	private int[] curList, nextList;
+
+	public Walktrap() {
+		this(4);
+	}
+
+	public Walktrap(int steps) {
+		this.steps = steps;
+		Integer mb = Integer.getInteger(MEMORY_PROPERTY);
+		this.maxMemory = mb != null ? mb * (1L << 20) : Runtime.getRuntime().maxMemory() / 4;
+	}
+
+	@Override
+	public Partition detect(CSRGraph g) {
+		try {
+			return super.detect(g);
+		} finally {
+			this.g = null;
+			d = loop = norm = minDs = cur = next = null;
+			p = null;
+			cached = null;
+			merged = scattered = null;
+			firstMember = lastMember = nextMember = curList = nextList = null;
+			inCur = inNext = null;
+			buffer = null;
+		}
+	}
+
+	@Override
+	protected void prepare(CSRGraph g) {
+		this.g = g;
+		d = new double[n];
+		loop = new double[n];
+		for (int i = 0; i < n; i++) {
+			loop[i] = g.degree(i) == 0 ? 1.0 : g.strength(i) / g.degree(i);
+			d[i] = g.strength(i) + loop[i];
+		}
+
+		p = new Vec[n];
+		norm = new double[n];
+		minDs = new double[n];
+		cached = new IndexedHeap(n);
+		memory = 0;
+		firstMember = new int[n];
+		lastMember = new int[n];
+		nextMember = new int[n];
+		for (int i = 0; i < n; i++) {
+			minDs[i] = Double.POSITIVE_INFINITY;
+			firstMember[i] = i;
+			lastMember[i] = i;
+			nextMember[i] = -1;
+		}
+
+		buffer = new float[n];
+		cur = new double[n];
+		next = new double[n];
+		inCur = new boolean[n];
+		inNext = new boolean[n];
+		curList = new int[n];
+		nextList = new int[n];
+	}
+
+	@Override
+	protected double initialPriority(int i, int j, double w) {
+		// rows are built in the order of nodes, the vector of i is scattered for all its pairs
+		if (scatteredNode != i || scattered == null) {
+			scatter(vector(i));
+			scatteredNode = i;
+		}
+		Vec vj = vector(j);
+		double dist = Math.max(norm[i] + norm[j] - 2.0 * vj.dot(buffer), 0.0);
+		double v = -dist / (2.0 * n);
+
+		// the minimal distances known so far (until the rows are built)
+		minDs[i] = Math.min(minDs[i], -v);
+		minDs[j] = Math.min(minDs[j], -v);
+		if (cached.contains(i))
+			cached.put(i, minDs[i]);
+		if (cached.contains(j))
+			cached.put(j, minDs[j]);
+		return v;
+	}
+
+	@Override
+	protected void bestPriorityChanged(int i, double v) {
+		minDs[i] = Double.isNaN(v) ? Double.POSITIVE_INFINITY : -v;
+		if (cached.contains(i))
+			cached.put(i, minDs[i]);
+	}
+
+	@Override
+	protected void startMerge(int x, int y, double vxy) {
+		// the parts are kept until the merge is finished
+		cached.remove(x);
+		cached.remove(y);
+
+		Vec a = p[x], b = p[y];
+		if (a == null || b == null) {
+			merged = propagate(x, y);
+		} else {
+			float fx = (float) size[x] / (size[x] + size[y]);
+			float fy = (float) size[y] / (size[x] + size[y]);
+			if (a.idx == null || b.idx == null || a.idx.length + b.idx.length > n / 2) {
+				float[] val = new float[n];
+				a.addTo(val, fx);
+				b.addTo(val, fy);
+				merged = new Vec(null, val);
+				reserve(merged.bytes());
+				memory += merged.bytes();
+				return;
+			}
+
+			int[] idx = new int[a.idx.length + b.idx.length];
+			float[] val = new float[a.idx.length + b.idx.length];
+			int i = 0, j = 0, m = 0;
+			while (i < a.idx.length || j < b.idx.length) {
+				int ka = i < a.idx.length ? a.idx[i] : Integer.MAX_VALUE;
+				int kb = j < b.idx.length ? b.idx[j] : Integer.MAX_VALUE;
+				if (ka == kb) {
+					idx[m] = ka;
+					val[m++] = fx * a.val[i++] + fy * b.val[j++];
+				} else if (ka < kb) {
+					idx[m] = ka;
+					val[m++] = fx * a.val[i++];
+				} else {
+					idx[m] = kb;
+					val[m++] = fy * b.val[j++];
+				}
+			}
+			merged = new Vec(Arrays.copyOf(idx, m), Arrays.copyOf(val, m));
+		}
+		reserve(merged.bytes());
+		memory += merged.bytes();
+	}
+
+	@Override
+	protected double mergedPriority(int k, int x, int y, double vxk, double vyk, double vxy, double exy) {
+		double sx = size[x], sy = size[y], sk = size[k];
+		if (!Double.isNaN(vxk) && !Double.isNaN(vyk)) {
+			// Lance-Williams update (priorities are negated distances)
+			return ((sx + sk) * vxk + (sy + sk) * vyk - sk * vxy) / (sx + sy + sk);
+		}
+
+		scatter(merged);
+		Vec vk = vector(k);
+		double dist = Math.max(merged.norm + norm[k] - 2.0 * vk.dot(buffer), 0.0);
+		return -dist * (sx + sy) * sk / ((sx + sy + sk) * n);
+	}
+
+	@Override
+	protected void finishMerge(int keep, int gone) {
+		drop(keep);
+		drop(gone);
+		p[keep] = merged;
+		norm[keep] = merged.norm;
+		cached.put(keep, minDs[keep]);
+		merged = null;
+
+		nextMember[lastMember[keep]] = firstMember[gone];
+		lastMember[keep] = lastMember[gone];
+	}
+
+	/**
+	 * The vector of community c, computed if it was not computed or has been dropped
+	 */
+	private Vec vector(int c) {
+		if (p[c] == null) {
+			Vec v = propagate(c, -1);
+			reserve(v.bytes());
+			p[c] = v;
+			norm[c] = v.norm;
+			memory += v.bytes();
+			cached.put(c, minDs[c]);
+		}
+		return p[c];
+	}
+
+	/**
+	 * Drops vectors until the given number of bytes fits into the memory (or no vector can be dropped)
+	 */
+	private void reserve(long bytes) {
+		while (memory + bytes > maxMemory && !cached.isEmpty())
+			drop(cached.top());
+	}
+
+	private void drop(int c) {
+		cached.remove(c);
+		if (p[c] != null) {
+			memory -= p[c].bytes();
+			p[c] = null;
+		}
+	}
+
+	/**
+	 * Scatters a vector into the buffer (the previously scattered vector is cleared)
+	 */
+	private void scatter(Vec v) {
+		if (scattered == v)
+			return;
+		if (v.idx == null) {
+			System.arraycopy(v.val, 0, buffer, 0, n);
+		} else {
+			if (scattered != null && scattered.idx == null)
+				Arrays.fill(buffer, 0.0f);
+			else if (scattered != null)
+				for (int i : scattered.idx)
+					buffer[i] = 0.0f;
+			for (int i = 0; i < v.idx.length; i++)
+				buffer[v.idx[i]] = v.val[i];
+		}
+		scattered = v;
+		scatteredNode = -1;
+	}
+
+	/**
+	 * The vector of the union of communities c1 and c2 (c2 = -1: of c1), a t-step random walk
+	 * starting from a member chosen uniformly at random
+	 */
+	private Vec propagate(int c1, int c2) {
+		int curLen = 0;
+		double start = 1.0 / (size[c1] + (c2 < 0 ? 0 : size[c2]));
+		for (int c : new int[] { c1, c2 }) {
+			if (c < 0)
+				continue;
+			for (int s = firstMember[c]; s >= 0; s = nextMember[s]) {
+				curList[curLen++] = s;
+				cur[s] = start;
+				inCur[s] = true;
+			}
+		}
+
+		for (int t = 0; t < steps; t++) {
+			int nextLen = 0;
+			for (int c = 0; c < curLen; c++) {
+				int i = curList[c];
+				double pi = cur[i] / d[i];
+				if (!inNext[i]) {
+					inNext[i] = true;
+					nextList[nextLen++] = i;
+				}
+				next[i] += pi * loop[i];
+				for (int k = g.begin(i); k < g.end(i); k++) {
+					int j = g.target(k);
+					if (!inNext[j]) {
+						inNext[j] = true;
+						nextList[nextLen++] = j;
+					}
+					next[j] += pi * g.weight(k);
+				}
+			}
+
+			for (int c = 0; c < curLen; c++) {
+				cur[curList[c]] = 0.0;
+				inCur[curList[c]] = false;
+			}
+
+			double[] tv = cur;
+			cur = next;
+			next = tv;
+			boolean[] tb = inCur;
+			inCur = inNext;
+			inNext = tb;
+			int[] tl = curList;
+			curList = nextList;
+			nextList = tl;
+			curLen = nextLen;
+		}
+
+		if (curLen > n / 2) {
+			float[] val = new float[n];
+			for (int c = 0; c < curLen; c++) {
+				int i = curList[c];
+				val[i] = (float) (cur[i] / Math.sqrt(d[i]));
+				cur[i] = 0.0;
+				inCur[i] = false;
+			}
+			return new Vec(null, val);
+		}
+
+		// large supports are collected in order by a scan of the nodes instead of sorting
+		if (curLen > n / 16) {
+			int m = 0;
+			for (int i = 0; i < n; i++)
+				if (inCur[i])
+					curList[m++] = i;
+		} else {
+			Arrays.sort(curList, 0, curLen);
+		}
+		int[] idx = new int[curLen];
+		float[] val = new float[curLen];
+		for (int c = 0; c < curLen; c++) {
+			int i = curList[c];
+			idx[c] = i;
+			val[c] = (float) (cur[i] / Math.sqrt(d[i]));
+			cur[i] = 0.0;
+			inCur[i] = false;
+		}
+		return new Vec(idx, val);
+	}
+
+	/**
+	 * Sparse (sorted indexes) or dense vector
+	 */
+	private static class Vec {
+		int[] idx;
+		float[] val;
+		double norm;     // squared Euclidean norm
+
+		Vec(int[] idx, float[] val) {
+			this.idx = idx;
+			this.val = val;
+			double s = 0.0;
+			for (int i = 0; i < val.length; i++)
+				s += (double) val[i] * val[i];
+			norm = s;
+		}
+
+		long bytes() {
+			return idx == null ? 4L * val.length : 8L * idx.length;
+		}
+
+		void addTo(float[] dense, float f) {
+			if (idx == null) {
+				for (int i = 0; i < val.length; i++)
+					dense[i] += f * val[i];
+			} else {
+				for (int i = 0; i < idx.length; i++)
+					dense[idx[i]] += f * val[i];
+			}
+		}
+
+		/**
+		 * The inner product with a dense vector
+		 */
+		double dot(float[] dense) {
+			if (idx == null) {
+				double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+				int len = val.length & ~3;
+				for (int i = 0; i < len; i += 4) {
+					s0 += val[i] * dense[i];
+					s1 += val[i + 1] * dense[i + 1];
+					s2 += val[i + 2] * dense[i + 2];
+					s3 += val[i + 3] * dense[i + 3];
+				}
+				for (int i = len; i < val.length; i++)
+					s0 += val[i] * dense[i];
+				return (s0 + s1) + (s2 + s3);
+			}
+
+			double s0 = 0.0, s1 = 0.0;
+			int len = idx.length & ~1;
+			for (int i = 0; i < len; i += 2) {
+				s0 += (double) val[i] * dense[idx[i]];
+				s1 += (double) val[i + 1] * dense[idx[i + 1]];
+			}
+			if (len < idx.length)
+				s0 += (double) val[len] * dense[idx[len]];
+			return s0 + s1;
+		}
+	}
+}
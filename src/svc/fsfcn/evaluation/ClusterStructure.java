@@ -3,6 +3,7 @@ package svc.fsfcn.evaluation;
 
 import java.io.IOException;
 
+import svc.fsfcn.ConnectivityTable;
 import svc.fsfcn.Dataset;
 import svc.fsfcn.FCNetwork;
 import svc.fsfcn.FSFCN;
@@ -25,18 +26,30 @@ public class ClusterStructure {
 	public void examine() 
 		throws IOException
 	{
+		// connectivity of networks for all thresholds is determined in advance, thresholds
+		// selecting the same features give the same network and are not clustered again
+		ConnectivityTable ct = new ConnectivityTable(ds);
+		String prevResult = null;
+		double prevT = -1.0;
+		
 		double t = 0.0;
 		while (t <= 1.0) {
-			FCNetwork fcn = new FCNetwork(ds, t);
-			fcn.createConnected();
-			if (fcn.getGraph().getEdgeCount() == 0)
+			if (ct.numLinks(t) == 0)
 				break;
 			
-			int numNodes = fcn.getGraph().getVertexCount();
-			int numLinks = fcn.getGraph().getEdgeCount();
-			FSFCN f = new FSFCN(fcn);
-			f.selectFeatures();
-			System.out.println(t + ", " + numNodes + ", " + numLinks + "," + f.wtQuality() + "," + f.fgQuality() + "," + f.lvQuality() + "," + f.imQuality());
+			if (prevResult == null || !ct.sameNetwork(t, prevT)) {
+				FCNetwork fcn = new FCNetwork(ds, t);
+				fcn.createConnected(ct);
+				
+				int numNodes = fcn.numNodes();
+				int numLinks = fcn.numLinks();
+				FSFCN f = new FSFCN(fcn);
+				f.selectFeatures();
+				prevResult = numNodes + ", " + numLinks + "," + f.wtQuality() + "," + f.fgQuality() + "," + f.lvQuality() + "," + f.imQuality();
+				prevT = t;
+			}
+			
+			System.out.println(t + ", " + prevResult);
 			
 			t += 0.01;
 		}
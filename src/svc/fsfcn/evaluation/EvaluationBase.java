@@ -1,5 +1,7 @@
 package svc.fsfcn.evaluation;
 
+import java.util.concurrent.Callable;
+
 import svc.fsfcn.Dataset;
 import svc.fsfcn.FCNetwork;
 import svc.fsfcn.FSFCN;
@@ -36,19 +38,41 @@ public abstract class EvaluationBase {
 	// the number of folds in cross validation procedures
 	protected static final int FOLDS = 10;	
 	
-	// attributes selected by FSFCN
-	protected int[][] selectedAttributes = new int[4][];
-	
 	protected Instances dataset;
 	protected  String classifierName;
 	
+	// the FSFCN dataset of the last training set (shared by the evaluations of a fold)
+	private Instances lastTrain;
+	private Dataset lastTrainDataset;
+	
+	// FSFCN selections shared with the evaluations of the same dataset by other classifiers
+	protected SelectionCache selectionCache;
+	private Long fingerprint;
+	
 	public EvaluationBase(String dsFileName, String classifierName) 
 		throws Exception
+	{
+		this(loadDataset(dsFileName), classifierName);
+	}
+	
+	/**
+	 * Evaluation of a loaded dataset (shared by the evaluations of several classifiers)
+	 */
+	public EvaluationBase(Instances dataset, String classifierName) 
+		throws Exception
 	{
 		this.classifierName = classifierName;
+		this.dataset = dataset;
+		selectionCache = SelectionCache.shared();
+	}
+	
+	public static Instances loadDataset(String dsFileName) 
+		throws Exception
+	{
 		DataSource source = new DataSource(dsFileName);
-		dataset = source.getDataSet();
+		Instances dataset = source.getDataSet();
 		dataset.setClassIndex(0); //  class attribute has index 0
+		return dataset;
 	}
 	
 	public static String getFSFCNVariant(int i) {
@@ -67,6 +91,18 @@ public abstract class EvaluationBase {
 		else return "UNKNOWN";
 	}
 	
+	/**
+	 * The FSFCN dataset of a training set, built once and reused while the same training set 
+	 * is evaluated by several methods or variants
+	 */
+	protected synchronized Dataset fsfcnDataset(Instances train) {
+		if (train != lastTrain) {
+			lastTrainDataset = new Dataset(train);
+			lastTrain = train;
+		}
+		return lastTrainDataset;
+	}
+	
 	protected Instances keepAttributes(int[] attrsToRemove, Instances data) 
 		throws Exception
 	{
@@ -131,7 +167,26 @@ public abstract class EvaluationBase {
 	protected ClassifierEvaluation evaluateCFS(Instances train, Instances test) 
 		throws Exception
 	{
-		int[] cfsAttrs  = cfsSelector(train);
+		return evaluateCFS(cfsSelector(train), train, test);
+	}
+	
+	/**
+	 * CFS for a fold, the selection is shared by the evaluations of the fold with other classifiers
+	 */
+	protected ClassifierEvaluation evaluateCFS(FoldContext fold) 
+		throws Exception
+	{
+		int[] cfsAttrs = fold.selection("CFS", new Callable<int[]>() {
+			public int[] call() throws Exception {
+				return cfsSelector(fold.getTrain());
+			}
+		});
+		return evaluateCFS(cfsAttrs, fold.getTrain(), fold.getTest());
+	}
+	
+	private ClassifierEvaluation evaluateCFS(int[] cfsAttrs, Instances train, Instances test) 
+		throws Exception
+	{
 		Instances trainAfterSelection = keepAttributes(cfsAttrs, train);
 		Instances testAfterSelection= keepAttributes(cfsAttrs, test);
 		return evaluateClassifier(trainAfterSelection, testAfterSelection, trainAfterSelection.numAttributes() - 1);
@@ -144,7 +199,7 @@ public abstract class EvaluationBase {
 	protected ClassifierEvaluation evaluateFCNWOC(Instances train, Instances test) 
 		throws Exception
 	{
-		Dataset ds = new Dataset(train);
+		Dataset ds = fsfcnDataset(train);
 		FCNetwork fcn = new FCNetwork(ds);
 		fcn.createConnected();
 		int[] attr =  fcn.selectWithoutClustering();
@@ -160,30 +215,54 @@ public abstract class EvaluationBase {
 	protected ClassifierEvaluation[] evaluateRankingMethods(Instances train, Instances test, int numAttrsToSelect) 
 		throws Exception
 	{
-		ASEvaluation[] eval = new ASEvaluation[NUM_RANKING_METHODS];
-		eval[0] = new ReliefFAttributeEval();
-		eval[1] = new GainRatioAttributeEval();
-		eval[2] = new InfoGainAttributeEval();
-		eval[3] = new CorrelationAttributeEval();
-		
 		ClassifierEvaluation[] res = new ClassifierEvaluation[NUM_RANKING_METHODS];
+		for (int i = 0; i < NUM_RANKING_METHODS; i++) 
+			res[i] = evaluateSelection(rankingSelector(train, i, numAttrsToSelect), train, test);
 		
-		for (int i = 0; i < eval.length; i++) {
-			AttributeSelection attsel = new AttributeSelection();
-			Ranker searchMethod = new Ranker();
-			searchMethod.setNumToSelect(numAttrsToSelect);
-			attsel.setSearch(searchMethod);
-			attsel.setEvaluator(eval[i]);
-			attsel.SelectAttributes(train);
-			int[] indices = attsel.selectedAttributes();  
-			Instances trainAfterSelection = keepAttributes(indices, train);
-			Instances testAfterSelection= keepAttributes(indices, test);
-			res[i] = evaluateClassifier(trainAfterSelection, testAfterSelection, indices.length - 1);
+		return res;
+	}
+	
+	/**
+	 * Ranking methods for a fold, selections are shared by the evaluations of the fold with other classifiers
+	 */
+	protected ClassifierEvaluation[] evaluateRankingMethods(FoldContext fold, int numAttrsToSelect) 
+		throws Exception
+	{
+		ClassifierEvaluation[] res = new ClassifierEvaluation[NUM_RANKING_METHODS];
+		for (int i = 0; i < NUM_RANKING_METHODS; i++) {
+			final int method = i;
+			int[] indices = fold.selection(rankingMethodName(i) + "," + numAttrsToSelect, new Callable<int[]>() {
+				public int[] call() throws Exception {
+					return rankingSelector(fold.getTrain(), method, numAttrsToSelect);
+				}
+			});
+			res[i] = evaluateSelection(indices, fold.getTrain(), fold.getTest());
 		}
 		
 		return res;
 	}
 	
+	/**
+	 * Attributes selected by a ranking method (indexed as in rankingMethodName())
+	 */
+	protected int[] rankingSelector(Instances data, int method, int numAttrsToSelect) 
+		throws Exception
+	{
+		ASEvaluation eval;
+		if (method == 0) eval = new ReliefFAttributeEval();
+		else if (method == 1) eval = new GainRatioAttributeEval();
+		else if (method == 2) eval = new InfoGainAttributeEval();
+		else eval = new CorrelationAttributeEval();
+		
+		AttributeSelection attsel = new AttributeSelection();
+		Ranker searchMethod = new Ranker();
+		searchMethod.setNumToSelect(numAttrsToSelect);
+		attsel.setSearch(searchMethod);
+		attsel.setEvaluator(eval);
+		attsel.SelectAttributes(data);
+		return attsel.selectedAttributes();
+	}
+	
 	
 	/**
 	 *  FSFCN (feature selection based on feature correlation networks)
@@ -191,30 +270,99 @@ public abstract class EvaluationBase {
 	public ClassifierEvaluation[] evaluateFSFCN(Instances train, Instances test, double featureRelevanceThreshold) 
 		throws Exception
 	{
-		Dataset ds = new Dataset(train);
-		FCNetwork fcn = new FCNetwork(ds, featureRelevanceThreshold);
+		return evaluateSelections(selectFSFCN(train, featureRelevanceThreshold), train, test);
+	}
+	
+	
+	/**
+	 *  FSFCN for a fold of a cross validation run (the training set is fold n of the dataset 
+	 *  randomized with the given seed), selections are taken from the selection cache when present
+	 */
+	public ClassifierEvaluation[] evaluateFSFCN(Instances train, Instances test, double featureRelevanceThreshold, long seed, int fold) 
+		throws Exception
+	{
+		return evaluateFSFCN(new FoldContext(train, test, seed, fold), featureRelevanceThreshold);
+	}
+	
+	
+	/**
+	 *  FSFCN for a fold of a cross validation run, the threshold independent state of the fold 
+	 *  is reused by the evaluations for other thresholds
+	 */
+	public ClassifierEvaluation[] evaluateFSFCN(FoldContext fold, double featureRelevanceThreshold) 
+		throws Exception
+	{
+		long fp = fingerprint();
+		long seed = fold.getSeed();
+		int n = fold.getFold();
+		int[][] selected = new int[4][];
+		boolean cached = true;
+		for (int i = 0; i < selected.length; i++) {
+			selected[i] = selectionCache.get(fp, seed, n, featureRelevanceThreshold, i);
+			cached &= selected[i] != null;
+		}
+		
+		if (!cached) {
+			int[][] selection = fold.select(featureRelevanceThreshold);
+			for (int i = 0; i < selected.length; i++) {
+				selected[i] = selection != null ? selection[i] : new int[0];
+				selectionCache.put(fp, seed, n, featureRelevanceThreshold, i, selected[i]);
+			}
+		}
+		
+		if (selected[WT].length == 0)
+			throw new RuntimeException("Empty FCN for relevance threshold " + featureRelevanceThreshold);
+		
+		return evaluateSelections(selected, fold.getTrain(), fold.getTest());
+	}
+	
+	private synchronized long fingerprint() {
+		if (fingerprint == null)
+			fingerprint = SelectionCache.fingerprint(dataset);
+		return fingerprint;
+	}
+	
+	
+	/**
+	 * Attributes selected by all FSFCN variants (indexed by variants)
+	 */
+	private int[][] selectFSFCN(Instances train, double featureRelevanceThreshold) 
+		throws Exception
+	{
+		FCNetwork fcn = new FCNetwork(fsfcnDataset(train), featureRelevanceThreshold);
 		fcn.createConnected();
 		
-		if (fcn.getGraph().getEdgeCount() == 0)
+		if (fcn.numLinks() == 0)
 			throw new RuntimeException("Empty FCN for relevance threshold " + featureRelevanceThreshold);
 		
 		FSFCN f = new FSFCN(fcn);
 		f.selectFeatures();
-		selectedAttributes[WT] = f.featuresWT();
-		selectedAttributes[FG] = f.featuresFG();
-		selectedAttributes[LV] = f.featuresLV();
-		selectedAttributes[IM] = f.featuresIM();
+		int[][] selected = new int[4][];
+		selected[WT] = f.featuresWT();
+		selected[FG] = f.featuresFG();
+		selected[LV] = f.featuresLV();
+		selected[IM] = f.featuresIM();
+		return selected;
+	}
+	
+	private ClassifierEvaluation[] evaluateSelections(int[][] selected, Instances train, Instances test) 
+		throws Exception
+	{
 		ClassifierEvaluation[] res = new ClassifierEvaluation[4];
-		
-		for (int i = 0; i < selectedAttributes.length; i++) {
-			Instances trainAfterSelection = keepAttributes(selectedAttributes[i], train);
-			Instances testAfterSelection= keepAttributes(selectedAttributes[i], test);
-			res[i] = evaluateClassifier(trainAfterSelection, testAfterSelection, selectedAttributes[i].length - 1);
-		}
+		for (int i = 0; i < selected.length; i++) 
+			res[i] = evaluateSelection(selected[i], train, test);
 		
 		return res;
 	}
 	
+	private ClassifierEvaluation evaluateSelection(int[] selected, Instances train, Instances test) 
+		throws Exception
+	{
+		Instances trainAfterSelection = keepAttributes(selected, train);
+		Instances testAfterSelection= keepAttributes(selected, test);
+		return evaluateClassifier(trainAfterSelection, testAfterSelection, selected.length - 1);
+	}
+	
 	
 	/**
 	 * WT FSFCN variant
@@ -222,21 +370,9 @@ public abstract class EvaluationBase {
 	public ClassifierEvaluation evaluateWT(Instances train, Instances test, double featureRelevanceThreshold) 
 		throws Exception
 	{
-		Dataset ds = new Dataset(train);
-		FCNetwork fcn = new FCNetwork(ds, featureRelevanceThreshold);
-		fcn.createConnected();
-		
-		if (fcn.getGraph().getEdgeCount() == 0)
-			throw new RuntimeException("Empty FCN for relevance threshold " + featureRelevanceThreshold);
-		
-		FSFCN f = new FSFCN(fcn);
-		f.selectFeatures();
-		selectedAttributes[WT] = f.featuresWT();
-		Instances trainAfterSelection = keepAttributes(selectedAttributes[WT], train);
-		Instances testAfterSelection= keepAttributes(selectedAttributes[WT], test);
-		return evaluateClassifier(trainAfterSelection, testAfterSelection, selectedAttributes[WT].length - 1);
+		return evaluateSelection(selectFSFCN(train, featureRelevanceThreshold)[WT], train, test);
 	}
-
+	
 	
 	/**
 	 * FG FSFCN variant
@@ -244,21 +380,9 @@ public abstract class EvaluationBase {
 	public ClassifierEvaluation evaluateFG(Instances train, Instances test, double featureRelevanceThreshold) 
 		throws Exception
 	{
-		Dataset ds = new Dataset(train);
-		FCNetwork fcn = new FCNetwork(ds, featureRelevanceThreshold);
-		fcn.createConnected();
-		
-		if (fcn.getGraph().getEdgeCount() == 0)
-			throw new RuntimeException("Empty FCN for relevance threshold " + featureRelevanceThreshold);
-		
-		FSFCN f = new FSFCN(fcn);
-		f.selectFeatures();
-		selectedAttributes[FG] = f.featuresWT();
-		Instances trainAfterSelection = keepAttributes(selectedAttributes[FG], train);
-		Instances testAfterSelection= keepAttributes(selectedAttributes[FG], test);
-		return evaluateClassifier(trainAfterSelection, testAfterSelection, selectedAttributes[FG].length - 1);
+		return evaluateSelection(selectFSFCN(train, featureRelevanceThreshold)[FG], train, test);
 	}
-
+	
 	
 	/**
 	 * LV FSFCN variant
@@ -266,19 +390,7 @@ public abstract class EvaluationBase {
 	public ClassifierEvaluation evaluateLV(Instances train, Instances test, double featureRelevanceThreshold) 
 		throws Exception
 	{
-		Dataset ds = new Dataset(train);
-		FCNetwork fcn = new FCNetwork(ds, featureRelevanceThreshold);
-		fcn.createConnected();
-		
-		if (fcn.getGraph().getEdgeCount() == 0)
-			throw new RuntimeException("Empty FCN for relevance threshold " + featureRelevanceThreshold);
-		
-		FSFCN f = new FSFCN(fcn);
-		f.selectFeatures();
-		selectedAttributes[LV] = f.featuresWT();
-		Instances trainAfterSelection = keepAttributes(selectedAttributes[LV], train);
-		Instances testAfterSelection= keepAttributes(selectedAttributes[LV], test);
-		return evaluateClassifier(trainAfterSelection, testAfterSelection, selectedAttributes[LV].length - 1);
+		return evaluateSelection(selectFSFCN(train, featureRelevanceThreshold)[LV], train, test);
 	}
 	
 	
@@ -288,18 +400,6 @@ public abstract class EvaluationBase {
 	public ClassifierEvaluation evaluateIM(Instances train, Instances test, double featureRelevanceThreshold) 
 		throws Exception
 	{
-		Dataset ds = new Dataset(train);
-		FCNetwork fcn = new FCNetwork(ds, featureRelevanceThreshold);
-		fcn.createConnected();
-		
-		if (fcn.getGraph().getEdgeCount() == 0)
-			throw new RuntimeException("Empty FCN for relevance threshold " + featureRelevanceThreshold);
-		
-		FSFCN f = new FSFCN(fcn);
-		f.selectFeatures();
-		selectedAttributes[IM] = f.featuresWT();
-		Instances trainAfterSelection = keepAttributes(selectedAttributes[IM], train);
-		Instances testAfterSelection= keepAttributes(selectedAttributes[IM], test);
-		return evaluateClassifier(trainAfterSelection, testAfterSelection, selectedAttributes[IM].length - 1);
+		return evaluateSelection(selectFSFCN(train, featureRelevanceThreshold)[IM], train, test);
 	}
 }
@@ -1,7 +1,14 @@
 package svc.fsfcn.evaluation;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 
@@ -17,6 +24,12 @@ import weka.core.Instances;
  */
 public class FSComparator extends EvaluationBase {
 	private static final int RUNS = 10;
+	
+	// the number of threads evaluating (run, fold) pairs in main()
+	public static final String THREADS_PROPERTY = "fsfcn.cv.threads";
+	
+	// main() evaluates all classifiers on shared folds concurrently (compareRoster())
+	public static final String ROSTER_PROPERTY = "fsfcn.roster";
 	private static DecimalFormat df = new DecimalFormat("#.###");
 	
 	public FSComparator(String dsFileName, String classifierName) 
@@ -25,19 +38,23 @@ public class FSComparator extends EvaluationBase {
 		super(dsFileName, classifierName);
 	}
 	
+	public FSComparator(Instances dataset, String classifierName) 
+		throws Exception
+	{
+		super(dataset, classifierName);
+	}
+	
 	public void compare(double thr) throws Exception {
-		System.out.println("Classification model: " +  classifierName);
-		
-		DescriptiveStatistics full = new DescriptiveStatistics();
-		DescriptiveStatistics cfs = new DescriptiveStatistics();
-		DescriptiveStatistics[] fsfcn = new DescriptiveStatistics[4];
-		for (int i = 0; i < fsfcn.length; i++)
-			fsfcn[i] = new DescriptiveStatistics();
-		DescriptiveStatistics[][] rank = new DescriptiveStatistics[4][EvaluationBase.NUM_RANKING_METHODS];
-		for (int i = 0; i < 4; i++) 
-			for (int j = 0; j < EvaluationBase.NUM_RANKING_METHODS; j++)
-				rank[i][j] = new DescriptiveStatistics();
-			
+		compare(thr, 1);
+	}
+	
+	/**
+	 * Compares the methods with (run, fold) evaluations performed by the given number of threads,
+	 * results are collected in the sequential order of runs and folds (the report does not depend 
+	 * on the number of threads)
+	 */
+	public void compare(double thr, int threads) throws Exception {
+		ArrayList<Callable<FoldResult>> tasks = new ArrayList<Callable<FoldResult>>();
 		for (int r = 0; r < RUNS; r++) {
 			// randomize data
 			int seed = r + 1;
@@ -47,25 +64,122 @@ public class FSComparator extends EvaluationBase {
 			randData.stratify(FOLDS);
 				
 			for (int n = 0; n < FOLDS; n++) {
-				Instances train = randData.trainCV(FOLDS, n);
-				Instances test = randData.testCV(FOLDS, n);
-		        
-				ClassifierEvaluation fullEval = evaluateWOFS(train, test);
-				full.addValue(fullEval.getA());
-		        
-				ClassifierEvaluation cfsEval = evaluateCFS(train, test); 
-				cfs.addValue(cfsEval.getA());
+				final int fold = n;
+				tasks.add(new Callable<FoldResult>() {
+					public FoldResult call() throws Exception {
+						return evaluateFold(new FoldContext(randData, FOLDS, fold, seed), thr);
+					}
+				});
+			}
+		}
+		
+		ArrayList<FoldResult> results = new ArrayList<FoldResult>();
+		if (threads <= 1) {
+			for (Callable<FoldResult> task : tasks)
+				results.add(task.call());
+		} else {
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				results.addAll(invokeAll(pool, tasks));
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+		
+		report(results, thr);
+	}
+	
+	/**
+	 * Compares the methods for all classifiers of the roster: the dataset is loaded once, and
+	 * the folds and their feature selections are made once and shared by the classifiers. 
+	 * Classifiers are trained and evaluated concurrently on a work-stealing pool (one thread 
+	 * per processor), the reports are printed in the roster order as by compare()
+	 */
+	public static void compareRoster(String dsFileName, String[] classifierNames, double thr) 
+		throws Exception
+	{
+		Instances dataset = loadDataset(dsFileName);
+		FSComparator[] cmp = new FSComparator[classifierNames.length];
+		ArrayList<ArrayList<FoldResult>> results = new ArrayList<ArrayList<FoldResult>>();
+		for (int c = 0; c < cmp.length; c++) {
+			cmp[c] = new FSComparator(dataset, classifierNames[c]);
+			results.add(new ArrayList<FoldResult>());
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		try {
+			// one run at a time (the folds of a run are kept until all classifiers are evaluated)
+			for (int r = 0; r < RUNS; r++) {
+				FoldContext[] folds = FoldContext.folds(dataset, FOLDS, r + 1);
 				
-				ClassifierEvaluation[] fsfcnEval = evaluateFSFCN(train, test, thr);
-				for (int i = 0; i < 4; i++) {
-					fsfcn[i].addValue(fsfcnEval[i].getA());
-						
-					int attrSelected = fsfcnEval[i].getF();
-					ClassifierEvaluation[] rankingEval = evaluateRankingMethods(train, test, attrSelected);
-					for (int j = 0; j < rankingEval.length; j++) {
-						rank[i][j].addValue(rankingEval[j].getA());
+				// by classifiers: the first classifier makes the selections of different folds in parallel
+				ArrayList<Callable<FoldResult>> tasks = new ArrayList<Callable<FoldResult>>();
+				for (int c = 0; c < cmp.length; c++) {
+					for (int n = 0; n < FOLDS; n++) {
+						final FSComparator fc = cmp[c];
+						final FoldContext fold = folds[n];
+						tasks.add(new Callable<FoldResult>() {
+							public FoldResult call() throws Exception {
+								return fc.evaluateFold(fold, thr);
+							}
+						});
 					}
 				}
+				
+				ArrayList<FoldResult> runResults = invokeAll(pool, tasks);
+				for (int c = 0; c < cmp.length; c++)
+					results.get(c).addAll(runResults.subList(c * FOLDS, (c + 1) * FOLDS));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		
+		for (int c = 0; c < cmp.length; c++)
+			cmp[c].report(results.get(c), thr);
+	}
+	
+	/**
+	 * Results of tasks in the order of tasks
+	 */
+	private static ArrayList<FoldResult> invokeAll(ExecutorService pool, ArrayList<Callable<FoldResult>> tasks) 
+		throws Exception
+	{
+		ArrayList<FoldResult> results = new ArrayList<FoldResult>();
+		for (Future<FoldResult> f : pool.invokeAll(tasks)) {
+			try {
+				results.add(f.get());
+			} catch (ExecutionException ee) {
+				if (ee.getCause() instanceof Exception)
+					throw (Exception) ee.getCause();
+				throw ee;
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Statistical comparison of fold results (in the order of runs and folds)
+	 */
+	private void report(ArrayList<FoldResult> results, double thr) {
+		System.out.println("Classification model: " +  classifierName);
+		
+		DescriptiveStatistics full = new DescriptiveStatistics();
+		DescriptiveStatistics cfs = new DescriptiveStatistics();
+		DescriptiveStatistics[] fsfcn = new DescriptiveStatistics[4];
+		for (int i = 0; i < fsfcn.length; i++)
+			fsfcn[i] = new DescriptiveStatistics();
+		DescriptiveStatistics[][] rank = new DescriptiveStatistics[4][EvaluationBase.NUM_RANKING_METHODS];
+		for (int i = 0; i < 4; i++) 
+			for (int j = 0; j < EvaluationBase.NUM_RANKING_METHODS; j++)
+				rank[i][j] = new DescriptiveStatistics();
+		
+		for (FoldResult fr : results) {
+			full.addValue(fr.full);
+			cfs.addValue(fr.cfs);
+			for (int i = 0; i < 4; i++) {
+				fsfcn[i].addValue(fr.fsfcn[i]);
+				for (int j = 0; j < EvaluationBase.NUM_RANKING_METHODS; j++)
+					rank[i][j].addValue(fr.rank[i][j]);
 			}
 		}
 			
@@ -92,6 +206,37 @@ public class FSComparator extends EvaluationBase {
 		}
 	}
 	
+	/**
+	 * Accuracies of all methods for one fold of a run
+	 */
+	private static class FoldResult {
+		double full, cfs;
+		double[] fsfcn = new double[4];
+		double[][] rank = new double[4][EvaluationBase.NUM_RANKING_METHODS];
+	}
+	
+	private FoldResult evaluateFold(FoldContext fold, double thr) 
+		throws Exception
+	{
+		FoldResult fr = new FoldResult();
+		
+		fr.full = evaluateWOFS(fold.getTrain(), fold.getTest()).getA();
+		fr.cfs = evaluateCFS(fold).getA();
+		
+		ClassifierEvaluation[] fsfcnEval = evaluateFSFCN(fold, thr);
+		for (int i = 0; i < 4; i++) {
+			fr.fsfcn[i] = fsfcnEval[i].getA();
+			
+			int attrSelected = fsfcnEval[i].getF();
+			ClassifierEvaluation[] rankingEval = evaluateRankingMethods(fold, attrSelected);
+			for (int j = 0; j < rankingEval.length; j++) {
+				fr.rank[i][j] = rankingEval[j].getA();
+			}
+		}
+		
+		return fr;
+	}
+	
 	
 	private String performTest(DescriptiveStatistics src, DescriptiveStatistics alt, double frt, String srcName, String altName) {
 		double[] srcv  = src.getValues();
@@ -117,9 +262,14 @@ public class FSComparator extends EvaluationBase {
 	public static void main(String[] args) 
 		throws Exception
 	{	
+		if (Boolean.getBoolean(ROSTER_PROPERTY)) {
+			compareRoster("JoinedSet.csv", ClassifierFactory.clNames, 0.05);
+			return;
+		}
+		
 		for (int i = 0; i < ClassifierFactory.clNames.length; i++) {
 			FSComparator val = new FSComparator("JoinedSet.csv", ClassifierFactory.clNames[i]);
-			val.compare(0.05);
+			val.compare(0.05, Integer.getInteger(THREADS_PROPERTY, 1));
 		}
 	}
 }
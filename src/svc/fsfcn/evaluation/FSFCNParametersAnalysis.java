@@ -1,7 +1,12 @@
 package svc.fsfcn.evaluation;
 
 import java.text.DecimalFormat;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 
@@ -18,12 +23,24 @@ import java.io.*;
 public class FSFCNParametersAnalysis extends EvaluationBase {
 	private static DecimalFormat df = new DecimalFormat("#.###");
 	
+	// the seed of the randomization of the dataset for cross validation
+	private static final int SEED = 1;
+	
+	// main() analyses all classifiers on shared folds concurrently (performRoster())
+	public static final String ROSTER_PROPERTY = "fsfcn.roster";
+	
 	public FSFCNParametersAnalysis(String dsFileName, String classifierName) 
 		throws Exception
 	{
 		super(dsFileName, classifierName);
 	}
 	
+	public FSFCNParametersAnalysis(Instances dataset, String classifierName) 
+		throws Exception
+	{
+		super(dataset, classifierName);
+	}
+	
 	private class Configuration {
 		double threshold, accuracy, precision, recall;
 		double features;
@@ -44,22 +61,135 @@ public class FSFCNParametersAnalysis extends EvaluationBase {
 	public void perform(double min, double max) 
 		throws Exception
 	{
-		PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter("accuracylog_" + classifierName + ".csv")));
-		Random rand = new Random(1);
-		Instances randData = new Instances(dataset);
-		randData.randomize(rand);
-		randData.stratify(FOLDS);
-
-		DescriptiveStatistics[] numFeatures = new DescriptiveStatistics[4];
-		for (int i = 0; i < numFeatures.length; i++)
-			numFeatures[i] = new DescriptiveStatistics();
+		// folds are built once, their correlations and pair orders are shared by all thresholds
+		perform(FoldContext.folds(dataset, FOLDS, SEED), min, max);
+	}
+	
+	/**
+	 * Analysis for all classifiers of the roster: the dataset is loaded once, the folds and 
+	 * their feature selections are made once and shared by the classifiers. Thresholds are 
+	 * analysed one at a time: (classifier, fold) evaluations of a threshold are performed 
+	 * concurrently on a work-stealing pool (one thread per processor), and their results are 
+	 * collected in the order of classifiers and folds, so that the stop condition of each 
+	 * classifier is applied after each threshold as by perform()
+	 */
+	public static void performRoster(String dsFileName, String[] classifierNames, double min, double max) 
+		throws Exception
+	{
+		Instances dataset = loadDataset(dsFileName);
+		FoldContext[] folds = FoldContext.folds(dataset, FOLDS, SEED);
+		
+		Sweep[] sweeps = new Sweep[classifierNames.length];
+		for (int c = 0; c < sweeps.length; c++)
+			sweeps[c] = new FSFCNParametersAnalysis(dataset, classifierNames[c]).new Sweep(min, max);
+		
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		try {
+			ArrayList<Sweep> active = new ArrayList<Sweep>();
+			for (Sweep s : sweeps)
+				if (s.isActive())
+					active.add(s);
+			
+			while (!active.isEmpty()) {
+				// by classifiers: the first classifier makes the selections of different folds in parallel
+				ArrayList<Callable<ClassifierEvaluation[]>> tasks = new ArrayList<Callable<ClassifierEvaluation[]>>();
+				for (Sweep s : active) {
+					for (int n = 0; n < FOLDS; n++) {
+						final Sweep sweep = s;
+						final FoldContext fold = folds[n];
+						tasks.add(new Callable<ClassifierEvaluation[]>() {
+							public ClassifierEvaluation[] call() throws Exception {
+								return sweep.evaluate(fold);
+							}
+						});
+					}
+				}
+				
+				ArrayList<ClassifierEvaluation[]> results = new ArrayList<ClassifierEvaluation[]>();
+				for (Future<ClassifierEvaluation[]> f : pool.invokeAll(tasks)) {
+					try {
+						results.add(f.get());
+					} catch (ExecutionException ee) {
+						if (ee.getCause() instanceof Exception)
+							throw (Exception) ee.getCause();
+						throw ee;
+					}
+				}
+				
+				ArrayList<Sweep> next = new ArrayList<Sweep>();
+				for (int c = 0; c < active.size(); c++) {
+					Sweep s = active.get(c);
+					s.accept(results.subList(c * FOLDS, (c + 1) * FOLDS));
+					if (s.isActive())
+						next.add(s);
+				}
+				active = next;
+			}
+		} finally {
+			pool.shutdownNow();
+			for (Sweep s : sweeps)
+				s.close();
+		}
+	}
+	
+	/**
+	 * Analysis on the given folds of the dataset
+	 */
+	public void perform(FoldContext[] folds, double min, double max) 
+		throws Exception
+	{
+		Sweep sweep = new Sweep(min, max);
+		try {
+			while (sweep.isActive()) {
+				ArrayList<ClassifierEvaluation[]> results = new ArrayList<ClassifierEvaluation[]>();
+				for (int n = 0; n < FOLDS; n++)
+					results.add(sweep.evaluate(folds[n]));
+				sweep.accept(results);
+			}
+		} finally {
+			sweep.close();
+		}
+	}
+	
+	/**
+	 * The threshold sweep of the classifier: evaluations of the folds for the current 
+	 * threshold are passed to accept(), which logs them and moves to the next threshold. 
+	 * The sweep stops after max or after a threshold for which some fold could not be 
+	 * evaluated
+	 */
+	private class Sweep {
+		private PrintWriter pw;
+		private Configuration[] best = new Configuration[4];
+		private Configuration[] worst = new Configuration[4];
+		private double t, max;
+		private boolean stop = false;
+		
+		Sweep(double min, double max) throws IOException {
+			this.pw = new PrintWriter(new BufferedWriter(new FileWriter("accuracylog_" + classifierName + ".csv")));
+			this.t = min;
+			this.max = max;
+		}
 		
-		Configuration[] best = new Configuration[4];
-		Configuration[] worst = new Configuration[4];
+		boolean isActive() {
+			return t <= max && !stop;
+		}
+		
+		/**
+		 * Evaluations of the variants on the fold for the current threshold, 
+		 * null if the fold cannot be evaluated
+		 */
+		ClassifierEvaluation[] evaluate(FoldContext fold) throws Exception {
+			try {
+				return evaluateFSFCN(fold, t);
+			} catch (RuntimeException re) {
+				return null;
+			}
+		}
 		
-		double t = min;
-		boolean stop = false;
-		while (t <= max && !stop) {
+		/**
+		 * Accepts the evaluations of all folds (in the order of folds) for the current threshold
+		 */
+		void accept(List<ClassifierEvaluation[]> folds) {
 			DescriptiveStatistics[] accuracy = new DescriptiveStatistics[4];
 			DescriptiveStatistics[] precision = new DescriptiveStatistics[4];
 			DescriptiveStatistics[] recall = new DescriptiveStatistics[4];
@@ -74,63 +204,67 @@ public class FSFCNParametersAnalysis extends EvaluationBase {
 				sf[i] = new DescriptiveStatistics();
 			}
 			
-			for (int n = 0; n < FOLDS; n++) {
-				Instances train = randData.trainCV(FOLDS, n);
-				Instances test = randData.testCV(FOLDS, n);
-				try {
-					ClassifierEvaluation[] ce = evaluateFSFCN(train, test, t);
-					for (int i = 0; i < ce.length; i++) {
-		        			accuracy[i].addValue(ce[i].getA());
-		        			precision[i].addValue(ce[i].getP());
-		        			recall[i].addValue(ce[i].getR());
-		        			numFeatures[i].addValue(ce[i].getF());
-		        			nf[i].addValue(ce[i].getF());
-		        			sf[i].addValue(ce[i].getF());
-					}
-				} catch (RuntimeException re) {
-		        		stop = true;
+			for (ClassifierEvaluation[] ce : folds) {
+				if (ce == null) {
+					stop = true;
+					continue;
+				}
+				for (int i = 0; i < ce.length; i++) {
+					accuracy[i].addValue(ce[i].getA());
+					precision[i].addValue(ce[i].getP());
+					recall[i].addValue(ce[i].getR());
+					nf[i].addValue(ce[i].getF());
+					sf[i].addValue(ce[i].getF());
 				}
 			}
 			
-			if (!stop) {		
-				for (int i = 0; i < 4; i++) {
-					if (best[i] == null) {
-						best[i] = new Configuration(t, accuracy[i].getMean(), precision[i].getMean(), recall[i].getMean(), nf[i].getMean());
-					} else if (accuracy[i].getMean() > best[i].accuracy) {
-						best[i].threshold = t;
-						best[i].accuracy = accuracy[i].getMean();
-						best[i].precision = precision[i].getMean();
-						best[i].recall = recall[i].getMean();
-						best[i].features = nf[i].getMean();
-					}
-					
-					if (worst[i] == null) {
-						worst[i] = new Configuration(t, accuracy[i].getMean(), precision[i].getMean(), recall[i].getMean(), nf[i].getMean());
-					} else if (accuracy[i].getMean() < worst[i].accuracy) {
-						worst[i].threshold = t;
-						worst[i].accuracy = accuracy[i].getMean();
-						worst[i].precision = precision[i].getMean();
-						worst[i].recall = recall[i].getMean();
-						worst[i].features = nf[i].getMean();
-					}
-					
-					pw.println(classifierName + "," + EvaluationBase.getFSFCNVariant(i) + "," + t + "," + accuracy[i].getMean() + "," + accuracy[i].getStandardDeviation());
+			if (stop)
+				return;
+			
+			for (int i = 0; i < 4; i++) {
+				if (best[i] == null) {
+					best[i] = new Configuration(t, accuracy[i].getMean(), precision[i].getMean(), recall[i].getMean(), nf[i].getMean());
+				} else if (accuracy[i].getMean() > best[i].accuracy) {
+					best[i].threshold = t;
+					best[i].accuracy = accuracy[i].getMean();
+					best[i].precision = precision[i].getMean();
+					best[i].recall = recall[i].getMean();
+					best[i].features = nf[i].getMean();
 				}
 				
-				System.out.println(classifierName + "," + t + "," + 
-						sf[0].getMean()  + "," + sf[0].getMax() + "," + 
-						sf[1].getMean() + "," + sf[1].getMax() + "," + 
-						sf[2].getMean() + "," + sf[2].getMax() + "," + 
-						sf[3].getMean() + "," + sf[3].getMax());
+				if (worst[i] == null) {
+					worst[i] = new Configuration(t, accuracy[i].getMean(), precision[i].getMean(), recall[i].getMean(), nf[i].getMean());
+				} else if (accuracy[i].getMean() < worst[i].accuracy) {
+					worst[i].threshold = t;
+					worst[i].accuracy = accuracy[i].getMean();
+					worst[i].precision = precision[i].getMean();
+					worst[i].recall = recall[i].getMean();
+					worst[i].features = nf[i].getMean();
+				}
 				
-				t += 0.01;
+				pw.println(classifierName + "," + EvaluationBase.getFSFCNVariant(i) + "," + t + "," + accuracy[i].getMean() + "," + accuracy[i].getStandardDeviation());
 			}
+			
+			System.out.println(classifierName + "," + t + "," + 
+					sf[0].getMean()  + "," + sf[0].getMax() + "," + 
+					sf[1].getMean() + "," + sf[1].getMax() + "," + 
+					sf[2].getMean() + "," + sf[2].getMax() + "," + 
+					sf[3].getMean() + "," + sf[3].getMax());
+			
+			t += 0.01;
 		}
 		
-		pw.close();
+		void close() {
+			pw.close();
+		}
 	}
 	
 	public static void main(String[] args) throws Exception {
+		if (Boolean.getBoolean(ROSTER_PROPERTY)) {
+			performRoster("JoinedSet.csv", ClassifierFactory.clNames, 0, 1.0);
+			return;
+		}
+		
 		for (int i = 0; i < ClassifierFactory.clNames.length; i++) {
 			FSFCNParametersAnalysis analysis = new FSFCNParametersAnalysis("JoinedSet.csv", ClassifierFactory.clNames[i]);
 			analysis.perform(0, 1.0);
@@ -0,0 +1,184 @@
+package svc.fsfcn.evaluation;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import svc.fsfcn.Attribute;
+import svc.fsfcn.ConnectivityTable;
+import svc.fsfcn.Dataset;
+import svc.fsfcn.FCNetwork;
+import svc.fsfcn.FSFCN;
+import svc.fsfcn.PairList;
+import weka.core.Instances;
+
+/**
+ * A fold of a cross validation run: its training and test sets and the part of FSFCN that
+ * does not depend on the feature relevance threshold (the dataset of the training set with
+ * correlations, class correlations and the pair order, and the connectivity table of its
+ * networks). Both are built on the first use and shared by the evaluations for all thresholds,
+ * a threshold only selects the nodes of its network. Thresholds selecting the same features
+ * give the same network, so its selections are reused.
+ *
+ * The connectivity table reads every pair and holds 8 bytes per pair, so it is used only with
+ * pair lists on the heap. Pair orders that Dataset keeps off-heap or discovers approximately
+ * (the mapped and lsh pair stores) are sorted lazily, their networks are built by
+ * createConnected(), which reads pairs only up to the connectivity threshold
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class FoldContext {
+	private Instances train, test;
+	private long seed;
+	private int fold;
+
+	private Dataset dataset;
+	private ConnectivityTable connectivity;
+
+	// selections of the last network (null: its network has no links), by the number of its nodes
+	private int lastNumNodes = -1;
+	private int[][] lastSelection;
+
+	// selections of other feature selection methods (they do not depend on the classifier), by method
+	private HashMap<String, int[]> selections = new HashMap<String, int[]>();
+
+	/**
+	 * Fold n of the dataset randomized with the given seed
+	 */
+	public FoldContext(Instances randData, int folds, int n, long seed) {
+		this(randData.trainCV(folds, n), randData.testCV(folds, n), seed, n);
+	}
+
+	public FoldContext(Instances train, Instances test, long seed, int fold) {
+		this.train = train;
+		this.test = test;
+		this.seed = seed;
+		this.fold = fold;
+	}
+
+	/**
+	 * All folds of the dataset randomized with the given seed
+	 */
+	public static FoldContext[] folds(Instances dataset, int folds, long seed) {
+		Instances randData = new Instances(dataset);
+		randData.randomize(new Random(seed));
+		randData.stratify(folds);
+
+		FoldContext[] fc = new FoldContext[folds];
+		for (int n = 0; n < folds; n++)
+			fc[n] = new FoldContext(randData, folds, n, seed);
+		return fc;
+	}
+
+	public Instances getTrain() {
+		return train;
+	}
+
+	public Instances getTest() {
+		return test;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getFold() {
+		return fold;
+	}
+
+	public synchronized Dataset getDataset() {
+		if (dataset == null)
+			dataset = new Dataset(train);
+		return dataset;
+	}
+
+	public synchronized ConnectivityTable getConnectivityTable()
+		throws IOException
+	{
+		if (connectivity == null)
+			connectivity = new ConnectivityTable(getDataset());
+		return connectivity;
+	}
+
+	/**
+	 * Whether networks are built with the connectivity table (the pair order is on the heap)
+	 */
+	public boolean usesConnectivityTable() {
+		return getDataset().getPairOrder() instanceof PairList;
+	}
+
+	/**
+	 * The connected feature correlation network for a feature relevance threshold
+	 */
+	public FCNetwork network(double featureRelevanceThreshold)
+		throws IOException
+	{
+		FCNetwork fcn = new FCNetwork(getDataset(), featureRelevanceThreshold);
+		if (usesConnectivityTable())
+			fcn.createConnected(getConnectivityTable());
+		else
+			fcn.createConnected();
+		return fcn;
+	}
+
+	/**
+	 * The number of features whose |class correlation| exceeds the threshold
+	 */
+	private int numNodes(double featureRelevanceThreshold)
+		throws IOException
+	{
+		if (usesConnectivityTable())
+			return getConnectivityTable().numNodes(featureRelevanceThreshold);
+
+		// features are sorted by relevance
+		Attribute[] attribute = getDataset().getAttributes();
+		int low = 0, high = attribute.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (Math.abs(attribute[mid].getClassCorrelation()) > featureRelevanceThreshold)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Attributes selected by the FSFCN variants (indexed as the variants in EvaluationBase)
+	 * for a feature relevance threshold, null if the network has no links
+	 */
+	public synchronized int[][] select(double featureRelevanceThreshold)
+		throws IOException
+	{
+		int numNodes = numNodes(featureRelevanceThreshold);
+		if (numNodes == lastNumNodes)
+			return lastSelection;
+
+		FCNetwork fcn = network(featureRelevanceThreshold);
+		int[][] selection = null;
+		if (fcn.numLinks() > 0) {
+			FSFCN f = new FSFCN(fcn);
+			f.selectFeatures();
+			selection = new int[][] { f.featuresWT(), f.featuresFG(), f.featuresLV(), f.featuresIM() };
+		}
+
+		lastNumNodes = numNodes;
+		lastSelection = selection;
+		return selection;
+	}
+
+	/**
+	 * The selection of a method on the training set, computed by the selector on the first request
+	 */
+	public synchronized int[] selection(String method, Callable<int[]> selector)
+		throws Exception
+	{
+		int[] s = selections.get(method);
+		if (s == null) {
+			s = selector.call();
+			selections.put(method, s);
+		}
+		return s;
+	}
+}
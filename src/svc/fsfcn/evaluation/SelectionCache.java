@@ -0,0 +1,168 @@
+package svc.fsfcn.evaluation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+
+import svc.fsfcn.Dataset;
+import svc.fsfcn.MutualInformationEngine;
+import svc.fsfcn.clustering.NativeClusterer;
+import weka.core.Instances;
+
+/**
+ * Attributes selected by the FSFCN variants for the training sets of cross validation runs,
+ * keyed by (dataset fingerprint, run seed, fold, relevance threshold, variant). Feature selection
+ * does not depend on the classifier, so the evaluations of the same folds with different
+ * classifiers select features only once. Selections are kept in memory and, when the cache
+ * has a file, appended to the file and read back by later runs. The file starts with a header
+ * naming the format, the clusterer version (NativeClusterer.VERSION), the pair store with its
+ * LSH parameters (Dataset.pairStoreConfiguration()) and the mutual information engine. A file
+ * written by another version or configuration (or without the header) is rejected, since its
+ * selections may be stale.
+ *
+ * An empty selection records that the network of the fold had no links
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class SelectionCache {
+	// the file of the shared cache (no file: the shared cache is kept in memory only)
+	public static final String FILE_PROPERTY = "fsfcn.selection.cache";
+
+	private static final int FORMAT_VERSION = 3;
+
+	private static SelectionCache shared;
+
+	private HashMap<String, int[]> selections = new HashMap<String, int[]>();
+	private String header = header();
+	private String file;
+	private boolean hasHeader;
+
+	public SelectionCache() {
+	}
+
+	public SelectionCache(String file)
+		throws IOException
+	{
+		this.file = file;
+		if (new File(file).length() > 0)
+			load();
+	}
+
+	/**
+	 * The cache shared by all evaluations in the JVM
+	 */
+	public static synchronized SelectionCache shared()
+		throws IOException
+	{
+		if (shared == null) {
+			String file = System.getProperty(FILE_PROPERTY);
+			shared = file == null ? new SelectionCache() : new SelectionCache(file);
+		}
+		return shared;
+	}
+
+	/**
+	 * The cached selection (null if not present)
+	 */
+	public synchronized int[] get(long fingerprint, long seed, int fold, double threshold, int variant) {
+		return selections.get(key(fingerprint, seed, fold, threshold, variant));
+	}
+
+	public synchronized void put(long fingerprint, long seed, int fold, double threshold, int variant, int[] attrs)
+		throws IOException
+	{
+		String key = key(fingerprint, seed, fold, threshold, variant);
+		if (selections.put(key, attrs) != null || file == null)
+			return;
+
+		PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(file, true)));
+		if (!hasHeader) {
+			pw.println(header);
+			hasHeader = true;
+		}
+		StringBuilder sb = new StringBuilder(key).append(",");
+		for (int i = 0; i < attrs.length; i++) {
+			if (i > 0)
+				sb.append(" ");
+			sb.append(attrs[i]);
+		}
+		pw.println(sb);
+		pw.close();
+	}
+
+	public synchronized int size() {
+		return selections.size();
+	}
+
+	/**
+	 * The header of files written with the current configuration (read from the system properties)
+	 */
+	private static String header() {
+		return "# FSFCN selection cache, format " + FORMAT_VERSION + ", clusterer " + NativeClusterer.VERSION
+			+ ", pairs " + Dataset.pairStoreConfiguration() + ", mi " + (MutualInformationEngine.usesJavaMI() ? "javami" : "engine");
+	}
+
+	private static String key(long fingerprint, long seed, int fold, double threshold, int variant) {
+		return fingerprint + "," + seed + "," + fold + "," + threshold + "," + variant;
+	}
+
+	private void load()
+		throws IOException
+	{
+		BufferedReader br = new BufferedReader(new FileReader(file));
+		try {
+			String line = br.readLine();
+			if (!header.equals(line))
+				throw new IOException("IOERR [class: SelectionCache, file " + file + " written by another format, clusterer version or configuration, expected header: "
+					+ header + "]");
+			hasHeader = true;
+
+			while ((line = br.readLine()) != null) {
+				if (line.isEmpty())
+					continue;
+
+				int sep = line.lastIndexOf(',');
+				if (sep < 0 || line.substring(0, sep).split(",").length != 5)
+					throw new IOException("IOERR [class: SelectionCache, malformed line: " + line + "]");
+
+				String attrs = line.substring(sep + 1).trim();
+				String[] tok = attrs.isEmpty() ? new String[0] : attrs.split(" ");
+				int[] a = new int[tok.length];
+				try {
+					for (int i = 0; i < tok.length; i++)
+						a[i] = Integer.parseInt(tok[i]);
+				} catch (NumberFormatException nfe) {
+					throw new IOException("IOERR [class: SelectionCache, malformed line: " + line + "]", nfe);
+				}
+				selections.put(line.substring(0, sep), a);
+			}
+		} finally {
+			br.close();
+		}
+	}
+
+	/**
+	 * A 64-bit hash of the attribute names and the values of a weka dataset
+	 */
+	public static long fingerprint(Instances data) {
+		long h = 0xcbf29ce484222325L;
+		h = mix(h, data.numAttributes());
+		h = mix(h, data.numInstances());
+		for (int a = 0; a < data.numAttributes(); a++)
+			h = mix(h, data.attribute(a).name().hashCode());
+		for (int k = 0; k < data.numInstances(); k++)
+			for (int a = 0; a < data.numAttributes(); a++)
+				h = mix(h, Double.doubleToLongBits(data.instance(k).value(a)));
+		return h;
+	}
+
+	private static long mix(long h, long v) {
+		h = (h ^ v) * 0x100000001b3L;
+		return h ^ (h >>> 29);
+	}
+}
@@ -0,0 +1,325 @@
+package svc.fsfcn.python;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import svc.fsfcn.CSRGraph;
+import svc.fsfcn.Dataset;
+import svc.fsfcn.FCNetwork;
+import svc.fsfcn.FSFCN;
+import svc.fsfcn.NDataset;
+import svc.fsfcn.clustering.Clusterer;
+import svc.fsfcn.clustering.Partition;
+
+/**
+ * Resident python igraph-based clusterer (clusterer.py --worker). Worker processes
+ * receive feature correlation networks and return their partitions through a
+ * length-prefixed binary protocol on stdin/stdout (see clusterer.py), so no files are
+ * exchanged. By default there is one process per clusterer (and per JVM for the shared
+ * one), concurrent calls wait for it. More processes (each importing igraph) are opted
+ * into by maxWorkers or, for the shared clusterer, by WORKERS_PROPERTY, they are started
+ * lazily and kept alive for later calls. A crashed process is replaced.
+ *
+ * @author svc (svc@dmi.uns.ac.rs)
+ */
+public class ClustererWorker implements Clusterer {
+	private static final String[] DEFAULT_COMMAND = {"python", "clusterer.py", "--worker"};
+
+	// the number of worker processes of the shared clusterer
+	public static final String WORKERS_PROPERTY = "fsfcn.clusterer.workers";
+
+	private static final int OP_EXIT = 0;
+	private static final int OP_CLUSTER = 1;
+
+	// the number of attempts to cluster a network (a crashed worker is restarted between attempts)
+	private static final int MAX_ATTEMPTS = 2;
+
+	// the longest error message accepted from a worker
+	private static final int MAX_ERROR_BYTES = 1 << 20;
+
+	private static ClustererWorker shared;
+
+	private String[] command;
+	private int maxWorkers;
+
+	// idle worker processes and the number of started ones
+	private ArrayDeque<Connection> idle = new ArrayDeque<Connection>();
+	private int started;
+	private boolean closed;
+
+	public ClustererWorker(String... command) {
+		this(1, command);
+	}
+
+	public ClustererWorker(int maxWorkers, String... command) {
+		if (maxWorkers < 1)
+			throw new IllegalArgumentException("[ClustererWorker error] maxWorkers < 1");
+		this.maxWorkers = maxWorkers;
+		this.command = command;
+	}
+
+	/**
+	 * The clusterer shared by all FSFCN instances in the JVM, one worker process unless
+	 * WORKERS_PROPERTY asks for more
+	 */
+	public static synchronized ClustererWorker shared() {
+		if (shared == null) {
+			shared = new ClustererWorker(Integer.getInteger(WORKERS_PROPERTY, 1), DEFAULT_COMMAND);
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					shared.close();
+				}
+			});
+		}
+
+		return shared;
+	}
+
+	@Override
+	public Partition[] cluster(CSRGraph g)
+		throws IOException
+	{
+		byte[] request = encode(g);
+		IOException last = null;
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			Connection c = acquire();
+			try {
+				Partition[] p = c.cluster(request, g.numNodes());
+				release(c);
+				return p;
+			} catch (IOException ioe) {
+				last = ioe;
+				System.out.println("[ClustererWorker, worker failure, restarting] " + ioe.getMessage());
+				discard(c);
+			} catch (ClusteringException ce) {
+				// the worker reported an error, its whole response has been read
+				release(c);
+				throw ce;
+			} catch (RuntimeException re) {
+				// the response may be read only in part, the stream cannot be reused
+				discard(c);
+				throw re;
+			}
+		}
+
+		throw new IOException("[ClustererWorker error] worker failed " + MAX_ATTEMPTS + " times", last);
+	}
+
+	/**
+	 * Stops all worker processes, calls in progress finish on their own processes
+	 */
+	public void close() {
+		ArrayList<Connection> toClose;
+		synchronized (this) {
+			closed = true;
+			toClose = new ArrayList<Connection>(idle);
+			idle.clear();
+		}
+
+		for (Connection c : toClose)
+			c.close();
+	}
+
+	private synchronized Connection acquire()
+		throws IOException
+	{
+		if (closed)
+			throw new IOException("[ClustererWorker error] worker pool closed");
+
+		while (idle.isEmpty() && started >= maxWorkers) {
+			try {
+				wait();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("[ClustererWorker error] interrupted while waiting for a worker");
+			}
+		}
+
+		if (!idle.isEmpty())
+			return idle.pop();
+
+		started++;
+		return new Connection();
+	}
+
+	private void release(Connection c) {
+		boolean stop;
+		synchronized (this) {
+			stop = closed;
+			if (stop)
+				started--;
+			else
+				idle.push(c);
+			notifyAll();
+		}
+
+		if (stop)
+			c.close();
+	}
+
+	private synchronized void discard(Connection c) {
+		c.destroy();
+		started--;
+		notifyAll();
+	}
+
+	/**
+	 * A worker process used by one thread at a time
+	 */
+	private class Connection {
+		private Process process;
+		private DataOutputStream toWorker;
+		private DataInputStream fromWorker;
+
+		Partition[] cluster(byte[] request, int n)
+			throws IOException
+		{
+			if (process == null || !process.isAlive()) {
+				destroy();
+				ProcessBuilder pb = new ProcessBuilder(command);
+				pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+				process = pb.start();
+				toWorker = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+				fromWorker = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+			}
+
+			toWorker.writeInt(request.length);
+			toWorker.write(request);
+			toWorker.flush();
+			return readPartitions(fromWorker, n);
+		}
+
+		void close() {
+			if (process == null)
+				return;
+
+			try {
+				toWorker.writeInt(4);
+				toWorker.writeInt(OP_EXIT);
+				toWorker.flush();
+				process.waitFor();
+			} catch (IOException ioe) {
+				// the worker is already gone
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+
+			destroy();
+		}
+
+		void destroy() {
+			if (process != null)
+				process.destroy();
+			process = null;
+			toWorker = null;
+			fromWorker = null;
+		}
+	}
+
+	private static byte[] encode(CSRGraph g)
+		throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(12 + 16 * g.numEdges());
+		DataOutputStream out = new DataOutputStream(bos);
+		out.writeInt(OP_CLUSTER);
+		out.writeInt(g.numNodes());
+		out.writeInt(g.numEdges());
+		for (int i = 0; i < g.numNodes(); i++) {
+			for (int k = g.begin(i); k < g.end(i); k++) {
+				int j = g.target(k);
+				if (i < j) {
+					out.writeInt(i);
+					out.writeInt(j);
+					out.writeDouble(g.r(k));
+				}
+			}
+		}
+		out.close();
+		return bos.toByteArray();
+	}
+
+	private static Partition[] readPartitions(DataInputStream fromWorker, int n)
+		throws IOException
+	{
+		int length = fromWorker.readInt();
+		if (length < 4)
+			throw new IOException("[ClustererWorker, protocol error] response length " + length);
+		int status = fromWorker.readInt();
+		if (status != 0) {
+			if (length - 4 > MAX_ERROR_BYTES)
+				throw new IOException("[ClustererWorker, protocol error] error message of " + (length - 4) + " bytes");
+			byte[] msg = new byte[length - 4];
+			fromWorker.readFully(msg);
+			throw new ClusteringException("[ClustererWorker, clustering error] " + new String(msg, "UTF-8"));
+		}
+
+		long expected = 4 + NUM_VARIANTS * (12 + 4L * n);
+		if (length != expected)
+			throw new IOException("[ClustererWorker, protocol error] response length " + length + " != " + expected);
+
+		// the whole response is read before it is checked
+		double[] q = new double[NUM_VARIANTS];
+		int[][] membership = new int[NUM_VARIANTS][];
+		boolean sizeOk = true;
+		for (int v = 0; v < NUM_VARIANTS; v++) {
+			q[v] = fromWorker.readDouble();
+			sizeOk &= fromWorker.readInt() == n;
+			membership[v] = new int[n];
+			for (int i = 0; i < n; i++)
+				membership[v][i] = fromWorker.readInt();
+		}
+
+		if (!sizeOk)
+			throw new IOException("[ClustererWorker, protocol error] partition size != " + n);
+		Partition[] p = new Partition[NUM_VARIANTS];
+		for (int v = 0; v < NUM_VARIANTS; v++) {
+			for (int i = 0; i < n; i++)
+				if (membership[v][i] < 0 || membership[v][i] >= n)
+					throw new IOException("[ClustererWorker, protocol error] cluster id " + membership[v][i]);
+			p[v] = new Partition(membership[v], q[v]);
+		}
+
+		return p;
+	}
+
+	/**
+	 * An error reported by the worker, the worker remains usable
+	 */
+	public static class ClusteringException extends IllegalStateException {
+		private static final long serialVersionUID = 1L;
+
+		ClusteringException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Selects features from a dataset (NDataset format) using the igraph worker
+	 */
+	public static void main(String[] args)
+		throws IOException
+	{
+		if (args.length < 1 || !new File(args[0]).exists()) {
+			System.out.println("Usage: ClustererWorker <dataset.csv> [feature relevance threshold]");
+			return;
+		}
+
+		double t = args.length > 1 ? Double.parseDouble(args[1]) : 0.05;
+		Dataset ds = new NDataset(args[0]);
+		FCNetwork fcn = new FCNetwork(ds, t);
+		fcn.createConnected();
+		fcn.info();
+
+		FSFCN f = new FSFCN(fcn, shared());
+		f.selectFeatures();
+		System.out.println(f.info());
+	}
+}